@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures tile-hash comparison of captures against a baseline, with and without a small change.
+ *
+ * @author Andres Almiray
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CaptureDiffBenchmark {
+    @Param({"256", "1024", "2048"})
+    public int size;
+
+    private CaptureBaseline baseline;
+    private int[] identical;
+    private int[] changed;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        int[] pixels = new int[size * size];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xff000000 | (i * 31);
+        }
+        baseline = new CaptureBaseline(size, size, pixels);
+        identical = Arrays.copyOf(pixels, pixels.length);
+        changed = Arrays.copyOf(pixels, pixels.length);
+        for (int y = 10; y < 20; y++) {
+            for (int x = 10; x < 50; x++) {
+                changed[y * size + x] = 0xffff0000;
+            }
+        }
+    }
+
+    @Benchmark
+    public CaptureDiff compareIdentical() {
+        return CaptureEngine.compare(baseline, identical, size, size);
+    }
+
+    @Benchmark
+    public CaptureDiff compareChanged() {
+        return CaptureEngine.compare(baseline, changed, size, size);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import javafx.application.Platform;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.scene.control.Button;
+import javafx.scene.layout.StackPane;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.kordamp.testfx.FxThreadUtils.runFx;
+import static org.kordamp.testfx.QueryChain.$;
+
+/**
+ * Measures the fixed costs the DSL adds on top of TestFX: building a chain, an FX thread round
+ * trip through {@code interact}, and the latency of {@code waitUntil}.
+ *
+ * @author Andres Almiray
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChainBenchmark {
+    private final BooleanProperty flag = new SimpleBooleanProperty();
+    private QueryChain chain;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        HeadlessFx.show(() -> {
+            Button button = new Button("Benchmark");
+            button.setId("button");
+            return new StackPane(button);
+        });
+        chain = $("#button");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        HeadlessFx.cleanup();
+    }
+
+    @Setup(Level.Invocation)
+    public void resetFlag() {
+        runFx(() -> flag.set(false));
+    }
+
+    @Benchmark
+    public QueryChain chainConstruction() {
+        return $("#button");
+    }
+
+    @Benchmark
+    public QueryChain interactRoundTrip() {
+        return chain.interact(() -> {
+        });
+    }
+
+    @Benchmark
+    public QueryChain waitUntilPolling() {
+        Platform.runLater(() -> flag.set(true));
+        return chain.waitUntil(node -> flag.get(), 5);
+    }
+
+    @Benchmark
+    public QueryChain waitUntilReactive() {
+        Platform.runLater(() -> flag.set(true));
+        return chain.waitUntil(node -> flag.get(), 5, flag);
+    }
+}
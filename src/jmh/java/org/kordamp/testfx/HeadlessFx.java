@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import javafx.scene.Parent;
+import org.testfx.api.FxToolkit;
+
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import static org.testfx.util.WaitForAsyncUtils.waitForFxEvents;
+
+/**
+ * Boots the FX toolkit on Monocle's headless platform and shows a scene root for benchmarks.
+ *
+ * @author Andres Almiray
+ */
+final class HeadlessFx {
+    static {
+        HeadlessMode.enable();
+    }
+
+    private HeadlessFx() {
+        // prevent instantiation
+    }
+
+    static <T extends Parent> T show(Supplier<T> root) throws TimeoutException {
+        FxToolkit.registerPrimaryStage();
+        @SuppressWarnings("unchecked")
+        T parent = (T) FxToolkit.setupSceneRoot(root::get);
+        FxToolkit.showStage();
+        waitForFxEvents();
+        return parent;
+    }
+
+    static void cleanup() throws TimeoutException {
+        FxToolkit.cleanupStages();
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import javafx.scene.Group;
+import javafx.scene.Node;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import static org.kordamp.testfx.QueryChain.$;
+
+/**
+ * Measures node resolution on synthetic scene graphs of increasing size.
+ *
+ * @author Andres Almiray
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LookupBenchmark {
+    private static final int LABEL_COUNT = 10;
+
+    @Param({"1000", "10000", "100000"})
+    public int nodeCount;
+
+    private String lastId;
+    private CompiledQuery compiledLastId;
+    private QueryChain styleClassChain;
+    private QueryChain labelsChain;
+    private SelectorIndex selectorIndex;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        HeadlessFx.show(() -> {
+            Group root = SceneGraphs.build(nodeCount);
+            root.getChildren().add(SceneGraphs.labels(LABEL_COUNT));
+            return root;
+        });
+        lastId = "#" + SceneGraphs.leafId(nodeCount - 1);
+        compiledLastId = CompiledQuery.of(lastId);
+        styleClassChain = $("." + SceneGraphs.LEAF_STYLE_CLASS);
+        labelsChain = $("#" + SceneGraphs.LABELS_ID);
+        selectorIndex = new SelectorIndex();
+        verifyScopedTextLookup();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        QueryChain.setSelectorIndex(null);
+        selectorIndex.clear();
+        HeadlessFx.cleanup();
+    }
+
+    @Benchmark
+    public Node resolveById() {
+        QueryChain.setSelectorIndex(null);
+        return $(lastId).node();
+    }
+
+    @Benchmark
+    public Node resolveByCompiledId() {
+        QueryChain.setSelectorIndex(null);
+        return $(compiledLastId).node();
+    }
+
+    @Benchmark
+    public Node resolveByIdIndexed() {
+        QueryChain.setSelectorIndex(selectorIndex);
+        return $(lastId).node();
+    }
+
+    @Benchmark
+    public Node resolveByStyleClass() {
+        QueryChain.setSelectorIndex(null);
+        return $("." + SceneGraphs.LEAF_STYLE_CLASS).node();
+    }
+
+    @Benchmark
+    public Node resolveScopedByText() {
+        QueryChain.setSelectorIndex(null);
+        return labelsChain.find(SceneGraphs.LABEL_TEXT).node();
+    }
+
+    @Benchmark
+    public Node queryVisibleNode() {
+        return styleClassChain.visibleNode();
+    }
+
+    /**
+     * Every label lives below the {@code labels} group, so a scoped text lookup must match exactly
+     * the nodes a lookup from the roots does.
+     */
+    private void verifyScopedTextLookup() {
+        QueryChain.setSelectorIndex(null);
+        NodeSet scoped = labelsChain.find(SceneGraphs.LABEL_TEXT).all();
+        NodeSet global = labelsChain.$$(SceneGraphs.LABEL_TEXT).all();
+        if (scoped.size() != LABEL_COUNT || !new HashSet<>(scoped.nodes()).equals(new HashSet<>(global.nodes()))) {
+            throw new IllegalStateException("find(\"" + SceneGraphs.LABEL_TEXT + "\") matched " + scoped.size()
+                + " nodes, $$(\"" + SceneGraphs.LABEL_TEXT + "\") matched " + global.size());
+        }
+    }
+}
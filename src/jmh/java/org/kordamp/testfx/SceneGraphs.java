@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.control.Label;
+import javafx.scene.shape.Rectangle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds synthetic scene graphs of a given size for benchmarks.
+ *
+ * @author Andres Almiray
+ */
+final class SceneGraphs {
+    static final String LEAF_STYLE_CLASS = "leaf";
+    static final String LABELS_ID = "labels";
+    static final String LABEL_TEXT = "OK";
+    private static final int FAN_OUT = 10;
+
+    private SceneGraphs() {
+        // prevent instantiation
+    }
+
+    static String leafId(int index) {
+        return "node-" + index;
+    }
+
+    /**
+     * Returns a balanced tree of {@code Group}s holding {@code leafCount} rectangles. Leaves get the id
+     * {@code node-<index>} and the style class {@code leaf}; the first half of them is invisible.
+     */
+    static Group build(int leafCount) {
+        List<Node> level = new ArrayList<>(leafCount);
+        for (int i = 0; i < leafCount; i++) {
+            Rectangle leaf = new Rectangle(1, 1);
+            leaf.setId(leafId(i));
+            leaf.getStyleClass().add(LEAF_STYLE_CLASS);
+            leaf.setVisible(i >= leafCount / 2);
+            level.add(leaf);
+        }
+
+        while (level.size() > 1) {
+            List<Node> parents = new ArrayList<>(level.size() / FAN_OUT + 1);
+            for (int i = 0; i < level.size(); i += FAN_OUT) {
+                parents.add(new Group(level.subList(i, Math.min(i + FAN_OUT, level.size())).toArray(new Node[0])));
+            }
+            level = parents;
+        }
+        return level.get(0) instanceof Group ? (Group) level.get(0) : new Group(level.get(0));
+    }
+
+    /**
+     * Returns a {@code Group} with the id {@code labels} holding {@code count} labels that all read
+     * {@code OK}.
+     */
+    static Group labels(int count) {
+        Group group = new Group();
+        group.setId(LABELS_ID);
+        for (int i = 0; i < count; i++) {
+            group.getChildren().add(new Label(LABEL_TEXT));
+        }
+        return group;
+    }
+}
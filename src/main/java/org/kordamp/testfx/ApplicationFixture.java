@@ -0,0 +1,231 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import javafx.application.Application;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+import org.testfx.api.FxToolkit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+import static org.kordamp.testfx.FxThreadUtils.awaitFxEvents;
+import static org.kordamp.testfx.FxThreadUtils.runFx;
+
+/**
+ * Launches an application, or shows a scene root, once per JVM and hands every test a clean copy
+ * of it, so only the first test class pays for the FX toolkit and application start up
+ * <pre>
+ * static final ApplicationFixture APP = ApplicationFixture.of(LoginApp.class)
+ *     .resetWith(LoginView::new);
+ *
+ * &#64;Before
+ * public void setup() throws Exception {
+ *     login = APP.reset();
+ * }
+ *
+ * &#64;Test
+ * public void validLogin() {
+ *     login.$("#username").click().write("jdoe");
+ * }
+ * </pre>
+ * {@code reset()} closes every window but the primary stage, resets the robot and restores the
+ * primary stage: its scene, title and bounds as they were after launch, and its scene root rebuilt by the
+ * registered root factory. Without a factory the root launched with the application is put back,
+ * which restores the structure of the scene but not the state of its nodes; register a factory, or
+ * a custom reset with {@code onReset(Consumer)}, for applications that keep state in their nodes.
+ *
+ * @author Andres Almiray
+ */
+public final class ApplicationFixture {
+    private static final Map<Object, ApplicationFixture> FIXTURES = new ConcurrentHashMap<>();
+
+    private final Class<? extends Application> applicationClass;
+    private final Supplier<? extends Parent> launchRoot;
+    private volatile Supplier<? extends Parent> rootFactory;
+    private volatile Consumer<Stage> customReset;
+
+    // guarded by this
+    private Application application;
+    private Stage stage;
+    private StageState launchState;
+
+    private ApplicationFixture(Class<? extends Application> applicationClass, Supplier<? extends Parent> launchRoot) {
+        this.applicationClass = applicationClass;
+        this.launchRoot = launchRoot;
+        this.rootFactory = launchRoot;
+    }
+
+    /**
+     * Returns the fixture of {@code applicationClass}, shared by every test class of the JVM.
+     */
+    public static ApplicationFixture of(Class<? extends Application> applicationClass) {
+        requireNonNull(applicationClass, "Argument 'applicationClass' must not be null");
+        return FIXTURES.computeIfAbsent(applicationClass, k -> new ApplicationFixture(applicationClass, null));
+    }
+
+    /**
+     * Returns the fixture named {@code name}, showing the roots built by {@code rootFactory} in the
+     * primary stage. Every test class of the JVM asking for the same name shares the fixture
+     * created by the first one; the root is rebuilt on every {@code reset()}.
+     */
+    public static ApplicationFixture of(String name, Supplier<? extends Parent> rootFactory) {
+        requireNonNull(name, "Argument 'name' must not be null");
+        requireNonNull(rootFactory, "Argument 'rootFactory' must not be null");
+        return FIXTURES.computeIfAbsent(name, k -> new ApplicationFixture(null, rootFactory));
+    }
+
+    /**
+     * Rebuilds the scene root of the primary stage with {@code rootFactory} on every reset.
+     */
+    public ApplicationFixture resetWith(Supplier<? extends Parent> rootFactory) {
+        this.rootFactory = requireNonNull(rootFactory, "Argument 'rootFactory' must not be null");
+        return this;
+    }
+
+    /**
+     * Runs {@code reset} on the FX thread on every reset, after the primary stage has been
+     * restored.
+     */
+    public ApplicationFixture onReset(Consumer<Stage> reset) {
+        this.customReset = requireNonNull(reset, "Argument 'reset' must not be null");
+        return this;
+    }
+
+    /**
+     * Launches the application unless it is already running.
+     */
+    public synchronized ApplicationFixture start() throws TimeoutException {
+        if (stage != null) {
+            return this;
+        }
+        stage = FxToolkit.registerPrimaryStage();
+        if (applicationClass != null) {
+            application = FxToolkit.setupApplication(applicationClass);
+        } else {
+            FxToolkit.setupSceneRoot(launchRoot::get);
+            FxToolkit.showStage();
+        }
+        awaitFxEvents();
+        launchState = FxThreadUtils.callFx(() -> new StageState(stage));
+        return this;
+    }
+
+    /**
+     * Starts the application if needed, restores it to its launch state and returns a scope for
+     * the chains of the next test.
+     */
+    public synchronized QueryScope reset() throws TimeoutException {
+        start();
+        TestFXProvider provider = QueryChain.getTestFXProvider();
+        TestFX testfx = provider.acquire();
+        provider.reset(testfx);
+
+        List<Window> windows = testfx.listWindows();
+        Supplier<? extends Parent> factory = rootFactory;
+        Consumer<Stage> reset = customReset;
+        runFx(() -> {
+            for (Window window : new ArrayList<>(windows)) {
+                if (window != stage) {
+                    window.hide();
+                }
+            }
+            launchState.restore(stage, factory != null ? factory.get() : null);
+            if (reset != null) {
+                reset.accept(stage);
+            }
+        });
+        awaitFxEvents();
+        return QueryScope.of(stage);
+    }
+
+    public synchronized boolean isStarted() {
+        return stage != null;
+    }
+
+    public synchronized Stage getStage() {
+        return stage;
+    }
+
+    /**
+     * Stops the application and forgets this fixture; the next {@code of(...)} starts afresh.
+     */
+    public synchronized void stop() throws TimeoutException {
+        if (stage == null) {
+            return;
+        }
+        if (application != null) {
+            FxToolkit.cleanupApplication(application);
+        }
+        FxToolkit.cleanupStages();
+        FIXTURES.values().remove(this);
+        application = null;
+        stage = null;
+        launchState = null;
+    }
+
+    /**
+     * The title, bounds, scene and scene root of the primary stage right after launch.
+     */
+    private static final class StageState {
+        private final String title;
+        private final double x;
+        private final double y;
+        private final double width;
+        private final double height;
+        private final Scene scene;
+        private final Parent root;
+
+        private StageState(Stage stage) {
+            this.title = stage.getTitle();
+            this.x = stage.getX();
+            this.y = stage.getY();
+            this.width = stage.getWidth();
+            this.height = stage.getHeight();
+            this.scene = stage.getScene();
+            this.root = scene != null ? scene.getRoot() : null;
+        }
+
+        private void restore(Stage stage, Parent newRoot) {
+            // applications that navigate with setScene leave the launch root on the launch scene
+            if (stage.getScene() != scene) {
+                stage.setScene(scene);
+            }
+            stage.setTitle(title);
+            stage.setX(x);
+            stage.setY(y);
+            stage.setWidth(width);
+            stage.setHeight(height);
+            Parent target = newRoot != null ? newRoot : root;
+            if (target != null && scene != null && scene.getRoot() != target) {
+                scene.setRoot(target);
+            }
+            if (!stage.isShowing()) {
+                stage.show();
+            }
+            stage.toFront();
+        }
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import com.google.common.base.Predicate;
+import javafx.beans.Observable;
+import javafx.geometry.VerticalDirection;
+import javafx.scene.Node;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.MouseButton;
+import org.hamcrest.Matcher;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static java.util.Objects.requireNonNull;
+import static org.kordamp.testfx.FxThreadUtils.supplyFx;
+
+/**
+ * Non-blocking counterpart of {@code QueryChain}. Every step returns a new chain backed by a
+ * {@code CompletableFuture} and runs once the previous step has completed.
+ * <p>
+ * Lookups, interactions, verifications and synthetic input run as FX thread continuations, and
+ * waits are resolved by listeners or by a shared timer, so none of them parks a thread. Input in
+ * {@code InputMode.ROBOT} has to drive the real robot, which blocks; such steps run on the chain's
+ * executor, which defaults to the common fork-join pool. The first failing step fails the chain and
+ * every later step is skipped.
+ *
+ * @author Andres Almiray
+ */
+public final class AsyncQueryChain {
+    private final CompletableFuture<QueryChain> stage;
+    private final Executor executor;
+
+    AsyncQueryChain(CompletableFuture<QueryChain> stage, Executor executor) {
+        this.stage = stage;
+        this.executor = executor;
+    }
+
+    public static AsyncQueryChain $(String query) {
+        return $(CompiledQuery.of(query));
+    }
+
+    public static <T extends Node> AsyncQueryChain $(Matcher<T> query) {
+        return $(CompiledQuery.of(query));
+    }
+
+    public static <T extends Node> AsyncQueryChain $(Predicate<T> query) {
+        return $(CompiledQuery.of(query));
+    }
+
+    public static AsyncQueryChain $(CompiledQuery query) {
+        requireNonNull(query, "Argument 'query' must not be null");
+        ChainContext context = QueryChain.newContext();
+        return new AsyncQueryChain(supplyFx(() -> QueryChain.create(context, query)), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Runs robot input of later steps on {@code executor}.
+     */
+    public AsyncQueryChain executor(Executor executor) {
+        return new AsyncQueryChain(stage, requireNonNull(executor, "Argument 'executor' must not be null"));
+    }
+
+    public AsyncQueryChain $$(String query) {
+        return onFx(chain -> chain.$$(query));
+    }
+
+    public <T extends Node> AsyncQueryChain $$(Matcher<T> query) {
+        return onFx(chain -> chain.$$(query));
+    }
+
+    public <T extends Node> AsyncQueryChain $$(Predicate<T> query) {
+        return onFx(chain -> chain.$$(query));
+    }
+
+    public AsyncQueryChain $$(CompiledQuery query) {
+        return onFx(chain -> chain.$$(query));
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // METHODS FOR INTERACTION.
+    //---------------------------------------------------------------------------------------------
+
+    public AsyncQueryChain interact(Runnable runnable) {
+        requireNonNull(runnable, "Argument 'runnable' must not be null");
+        return settled(onFx(chain -> {
+            runnable.run();
+            return chain;
+        }));
+    }
+
+    public <T> AsyncQueryChain interact(Callable<T> callable) {
+        requireNonNull(callable, "Argument 'callable' must not be null");
+        return settled(onFx(chain -> {
+            callable.call();
+            return chain;
+        }));
+    }
+
+    public <T extends Node, R> AsyncQueryChain interact(Class<T> type, Function<T, R> function) {
+        requireNonNull(type, "Argument 'type' must not be null");
+        requireNonNull(function, "Argument 'function' must not be null");
+        return settled(onFx(chain -> {
+            function.apply(type.cast(chain.node()));
+            return chain;
+        }));
+    }
+
+    public <T extends Node> AsyncQueryChain interact(Class<T> type, Consumer<T> consumer) {
+        requireNonNull(type, "Argument 'type' must not be null");
+        requireNonNull(consumer, "Argument 'consumer' must not be null");
+        return settled(onFx(chain -> {
+            consumer.accept(type.cast(chain.node()));
+            return chain;
+        }));
+    }
+
+    /**
+     * Runs any blocking {@code QueryChain} step: on the FX thread in synthetic input mode, otherwise
+     * on the chain's executor.
+     */
+    public AsyncQueryChain then(Function<QueryChain, QueryChain> step) {
+        requireNonNull(step, "Argument 'step' must not be null");
+        return new AsyncQueryChain(stage.thenCompose(chain -> {
+            if (chain.context().isSynthetic()) {
+                return supplyFx(() -> step.apply(chain));
+            }
+            return CompletableFuture.supplyAsync(() -> step.apply(chain), executor);
+        }), executor);
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // METHODS FOR INPUT.
+    //---------------------------------------------------------------------------------------------
+
+    public AsyncQueryChain click(MouseButton... buttons) {
+        return then(chain -> chain.click(buttons));
+    }
+
+    public AsyncQueryChain doubleClick(MouseButton... buttons) {
+        return then(chain -> chain.doubleClick(buttons));
+    }
+
+    public AsyncQueryChain rightClick() {
+        return then(QueryChain::rightClick);
+    }
+
+    public AsyncQueryChain drag(MouseButton... buttons) {
+        return then(chain -> chain.drag(buttons));
+    }
+
+    public AsyncQueryChain drop() {
+        return then(QueryChain::drop);
+    }
+
+    public AsyncQueryChain dropTo(String query) {
+        return then(chain -> chain.dropTo(query));
+    }
+
+    public AsyncQueryChain dropTo(CompiledQuery query) {
+        return then(chain -> chain.dropTo(query));
+    }
+
+    public AsyncQueryChain moveTo(String query) {
+        return then(chain -> chain.moveTo(query));
+    }
+
+    public AsyncQueryChain moveTo(CompiledQuery query) {
+        return then(chain -> chain.moveTo(query));
+    }
+
+    public AsyncQueryChain write(String text) {
+        return then(chain -> chain.write(text));
+    }
+
+    public AsyncQueryChain type(KeyCode... keyCodes) {
+        return then(chain -> chain.type(keyCodes));
+    }
+
+    public AsyncQueryChain push(KeyCode... combination) {
+        return then(chain -> chain.push(combination));
+    }
+
+    public AsyncQueryChain eraseText(int amount) {
+        return then(chain -> chain.eraseText(amount));
+    }
+
+    public AsyncQueryChain scroll(int amount, VerticalDirection direction) {
+        return then(chain -> chain.scroll(amount, direction));
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // METHODS FOR WAITING.
+    //---------------------------------------------------------------------------------------------
+
+    public AsyncQueryChain sleep(long milliseconds) {
+        return sleep(milliseconds, TimeUnit.MILLISECONDS);
+    }
+
+    public AsyncQueryChain sleep(long duration, TimeUnit timeUnit) {
+        requireNonNull(timeUnit, "Argument 'timeUnit' must not be null");
+        return new AsyncQueryChain(stage.thenCompose(chain -> {
+            CompletableFuture<QueryChain> future = new CompletableFuture<>();
+            WaitSupport.scheduler().schedule(() -> future.complete(chain), duration, timeUnit);
+            return future;
+        }), executor);
+    }
+
+    public <T extends Node> AsyncQueryChain waitUntil(Predicate<T> condition,
+                                                      int timeoutInSeconds,
+                                                      Observable... dependencies) {
+        return waitUntil(null, condition, Duration.ofSeconds(timeoutInSeconds), dependencies);
+    }
+
+    public <T extends Node> AsyncQueryChain waitUntil(String message,
+                                                      Predicate<T> condition,
+                                                      int timeoutInSeconds,
+                                                      Observable... dependencies) {
+        return waitUntil(message, condition, Duration.ofSeconds(timeoutInSeconds), dependencies);
+    }
+
+    public <T extends Node> AsyncQueryChain waitUntil(Predicate<T> condition,
+                                                      Duration timeout,
+                                                      Observable... dependencies) {
+        return waitUntil(null, condition, timeout, dependencies);
+    }
+
+    public <T extends Node> AsyncQueryChain waitUntil(String message,
+                                                      Predicate<T> condition,
+                                                      Duration timeout,
+                                                      Observable... dependencies) {
+        requireNonNull(condition, "Argument 'condition' must not be null");
+        return awaitCondition(message, chain -> () -> condition.apply(chain.node()), timeout, dependencies);
+    }
+
+    public <T extends Node> AsyncQueryChain waitUntil(Matcher<T> condition,
+                                                      int timeoutInSeconds,
+                                                      Observable... dependencies) {
+        return waitUntil(null, condition, Duration.ofSeconds(timeoutInSeconds), dependencies);
+    }
+
+    public <T extends Node> AsyncQueryChain waitUntil(String message,
+                                                      Matcher<T> condition,
+                                                      int timeoutInSeconds,
+                                                      Observable... dependencies) {
+        return waitUntil(message, condition, Duration.ofSeconds(timeoutInSeconds), dependencies);
+    }
+
+    public <T extends Node> AsyncQueryChain waitUntil(Matcher<T> condition,
+                                                      Duration timeout,
+                                                      Observable... dependencies) {
+        return waitUntil(null, condition, timeout, dependencies);
+    }
+
+    public <T extends Node> AsyncQueryChain waitUntil(String message,
+                                                      Matcher<T> condition,
+                                                      Duration timeout,
+                                                      Observable... dependencies) {
+        requireNonNull(condition, "Argument 'condition' must not be null");
+        return awaitCondition(message, chain -> () -> condition.matches(chain.node()), timeout, dependencies);
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // METHODS FOR VERIFYING STATE.
+    //---------------------------------------------------------------------------------------------
+
+    public <T extends Node> AsyncQueryChain verifyThat(Matcher<T> matcher) {
+        requireNonNull(matcher, "Argument 'matcher' must not be null");
+        return onFx(chain -> {
+            QueryBatch.verify(chain.node(), matcher);
+            return chain;
+        });
+    }
+
+    public <T extends Node> AsyncQueryChain verifyThat(Predicate<T> predicate) {
+        requireNonNull(predicate, "Argument 'predicate' must not be null");
+        return onFx(chain -> {
+            T node = chain.node();
+            if (!predicate.apply(node)) {
+                throw new AssertionError("Expected: predicate to match " + node);
+            }
+            return chain;
+        });
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // COMPLETION.
+    //---------------------------------------------------------------------------------------------
+
+    public CompletableFuture<QueryChain> toCompletableFuture() {
+        return stage;
+    }
+
+    /**
+     * Blocks until every step has run and returns the chain the last step operated on, rethrowing
+     * the failure of the first failing step.
+     */
+    public QueryChain join() {
+        try {
+            return stage.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // PRIVATE MEMBERS.
+    //---------------------------------------------------------------------------------------------
+
+    private AsyncQueryChain onFx(FxStep step) {
+        return new AsyncQueryChain(stage.thenCompose(chain -> supplyFx(() -> step.apply(chain))), executor);
+    }
+
+    /**
+     * Lets the FX thread process the events queued by {@code chain} before the next step runs.
+     */
+    private AsyncQueryChain settled(AsyncQueryChain chain) {
+        return new AsyncQueryChain(chain.stage.thenCompose(current -> supplyFx(() -> current)), executor);
+    }
+
+    private AsyncQueryChain awaitCondition(String message,
+                                           Function<QueryChain, Callable<Boolean>> condition,
+                                           Duration timeout,
+                                           Observable... dependencies) {
+        requireNonNull(timeout, "Argument 'timeout' must not be null");
+        return new AsyncQueryChain(stage.thenCompose(chain ->
+            WaitSupport.whenCondition(message, condition.apply(chain), timeout.toNanos(), TimeUnit.NANOSECONDS, dependencies)
+                .thenApply(ignored -> chain)), executor);
+    }
+
+    private interface FxStep {
+        QueryChain apply(QueryChain chain) throws Exception;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Reference pixels of a node, plus one hash per tile, to compare later captures against.
+ * <p>
+ * Baselines are created with {@code QueryChain.captureBaseline()} or from an existing
+ * {@code Image}, and can be stored with {@code write(Path)} and loaded back with {@code read(Path)}.
+ *
+ * @author Andres Almiray
+ */
+public final class CaptureBaseline {
+    private static final int MAGIC = 0x54464342; // "TFCB"
+
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+    private final long[] tileHashes;
+
+    CaptureBaseline(int width, int height, int[] pixels) {
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+        this.tileHashes = CaptureEngine.tileHashes(pixels, width, height);
+    }
+
+    public static CaptureBaseline of(Image image) {
+        requireNonNull(image, "Argument 'image' must not be null");
+        int width = (int) image.getWidth();
+        int height = (int) image.getHeight();
+        int[] pixels = new int[width * height];
+        image.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+        return new CaptureBaseline(width, height, pixels);
+    }
+
+    public static CaptureBaseline read(Path file) throws IOException {
+        requireNonNull(file, "Argument 'file' must not be null");
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a capture baseline");
+            }
+            int width = in.readInt();
+            int height = in.readInt();
+            int[] pixels = new int[width * height];
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = in.readInt();
+            }
+            return new CaptureBaseline(width, height, pixels);
+        }
+    }
+
+    public void write(Path file) throws IOException {
+        requireNonNull(file, "Argument 'file' must not be null");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(width);
+            out.writeInt(height);
+            for (int pixel : pixels) {
+                out.writeInt(pixel);
+            }
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    int[] pixels() {
+        return pixels;
+    }
+
+    long[] tileHashes() {
+        return tileHashes;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import javafx.geometry.Rectangle2D;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of comparing a capture against a {@code CaptureBaseline}. Changed regions are reported
+ * with tile granularity, with adjacent changed tiles on the same row merged into one region.
+ *
+ * @author Andres Almiray
+ */
+public final class CaptureDiff {
+    private final int width;
+    private final int height;
+    private final long changedPixels;
+    private final boolean sizeMismatch;
+    private final List<Rectangle2D> regions;
+
+    CaptureDiff(int width, int height, long changedPixels, boolean sizeMismatch, List<Rectangle2D> regions) {
+        this.width = width;
+        this.height = height;
+        this.changedPixels = changedPixels;
+        this.sizeMismatch = sizeMismatch;
+        this.regions = Collections.unmodifiableList(regions);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long getChangedPixels() {
+        return changedPixels;
+    }
+
+    /**
+     * Fraction of pixels that differ, between {@code 0} and {@code 1}. A capture whose size differs
+     * from the baseline counts as entirely changed.
+     */
+    public double getDifference() {
+        long total = (long) width * height;
+        return total == 0 ? 0d : (double) changedPixels / total;
+    }
+
+    public boolean isSizeMismatch() {
+        return sizeMismatch;
+    }
+
+    /**
+     * Areas that changed, in the coordinates of the captured image.
+     */
+    public List<Rectangle2D> getRegions() {
+        return regions;
+    }
+
+    public boolean isIdentical() {
+        return !sizeMismatch && changedPixels == 0;
+    }
+
+    /**
+     * Returns {@code true} if sizes match and at most {@code tolerance} (0 to 1) of the pixels differ.
+     */
+    public boolean matches(double tolerance) {
+        return !sizeMismatch && getDifference() <= tolerance;
+    }
+
+    @Override
+    public String toString() {
+        if (sizeMismatch) {
+            return "CaptureDiff[size mismatch, captured " + width + "x" + height + "]";
+        }
+        return "CaptureDiff[" + changedPixels + " of " + ((long) width * height) + " pixels changed, regions=" + regions + "]";
+    }
+}
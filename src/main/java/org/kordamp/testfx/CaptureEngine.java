@@ -0,0 +1,195 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import javafx.geometry.Bounds;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.Node;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.kordamp.testfx.FxThreadUtils.callFx;
+
+/**
+ * Snapshots nodes into a pixel buffer that is reused from one capture to the next and compares
+ * them against a {@code CaptureBaseline} tile by tile.
+ * <p>
+ * The snapshot image and pixel buffer only ever grow, and are confined to the FX thread. Tiles
+ * whose hash matches the baseline are skipped without reading the baseline pixels; only tiles
+ * with a different hash are compared pixel by pixel.
+ *
+ * @author Andres Almiray
+ */
+final class CaptureEngine {
+    static final int TILE_SIZE = 32;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // only touched on the FX thread
+    private static WritableImage image;
+    private static int[] pixels = new int[0];
+
+    private CaptureEngine() {
+        // prevent instantiation
+    }
+
+    static CaptureBaseline baseline(Node node) {
+        return callFx(() -> {
+            Rectangle2D area = snapshot(node);
+            int width = (int) area.getWidth();
+            int height = (int) area.getHeight();
+            return new CaptureBaseline(width, height, Arrays.copyOf(pixels, width * height));
+        });
+    }
+
+    static CaptureDiff diff(Node node, CaptureBaseline baseline) {
+        return callFx(() -> {
+            Rectangle2D area = snapshot(node);
+            return compare(baseline, pixels, (int) area.getWidth(), (int) area.getHeight());
+        });
+    }
+
+    /**
+     * Renders {@code node} into a new image without going through the screen.
+     */
+    static WritableImage image(Node node) {
+        return callFx(() -> {
+            Rectangle2D area = snapshot(node);
+            int width = (int) area.getWidth();
+            int height = (int) area.getHeight();
+            WritableImage copy = new WritableImage(width, height);
+            copy.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+            return copy;
+        });
+    }
+
+    static long[] tileHashes(int[] pixels, int width, int height) {
+        int tilesX = tiles(width);
+        int tilesY = tiles(height);
+        long[] hashes = new long[tilesX * tilesY];
+        for (int ty = 0; ty < tilesY; ty++) {
+            for (int tx = 0; tx < tilesX; tx++) {
+                hashes[ty * tilesX + tx] = tileHash(pixels, width, height, tx, ty);
+            }
+        }
+        return hashes;
+    }
+
+    static CaptureDiff compare(CaptureBaseline baseline, int[] pixels, int width, int height) {
+        if (width != baseline.getWidth() || height != baseline.getHeight()) {
+            return new CaptureDiff(width, height, (long) width * height, true,
+                Arrays.asList(new Rectangle2D(0, 0, Math.max(width, baseline.getWidth()), Math.max(height, baseline.getHeight()))));
+        }
+
+        int tilesX = tiles(width);
+        int tilesY = tiles(height);
+        long[] baselineHashes = baseline.tileHashes();
+        int[] baselinePixels = baseline.pixels();
+        List<Rectangle2D> regions = new ArrayList<>();
+        long changedPixels = 0;
+        for (int ty = 0; ty < tilesY; ty++) {
+            int runStart = -1;
+            for (int tx = 0; tx < tilesX; tx++) {
+                int changed = 0;
+                if (tileHash(pixels, width, height, tx, ty) != baselineHashes[ty * tilesX + tx]) {
+                    changed = countDifferences(baselinePixels, pixels, width, height, tx, ty);
+                }
+                changedPixels += changed;
+                if (changed > 0 && runStart < 0) {
+                    runStart = tx;
+                } else if (changed == 0 && runStart >= 0) {
+                    regions.add(region(runStart, tx, ty, width, height));
+                    runStart = -1;
+                }
+            }
+            if (runStart >= 0) {
+                regions.add(region(runStart, tilesX, ty, width, height));
+            }
+        }
+        return new CaptureDiff(width, height, changedPixels, false, regions);
+    }
+
+    /**
+     * Renders {@code node} into the shared image and copies its pixels into the shared buffer.
+     *
+     * @return the area that was captured, in the parent's coordinates
+     */
+    private static Rectangle2D snapshot(Node node) {
+        Bounds bounds = node.getBoundsInParent();
+        int width = Math.max(1, (int) Math.ceil(bounds.getWidth()));
+        int height = Math.max(1, (int) Math.ceil(bounds.getHeight()));
+        if (image == null || image.getWidth() < width || image.getHeight() < height) {
+            int imageWidth = image == null ? width : Math.max(width, (int) image.getWidth());
+            int imageHeight = image == null ? height : Math.max(height, (int) image.getHeight());
+            image = new WritableImage(imageWidth, imageHeight);
+        }
+        if (pixels.length < width * height) {
+            pixels = new int[width * height];
+        }
+
+        SnapshotParameters parameters = new SnapshotParameters();
+        parameters.setViewport(new Rectangle2D(bounds.getMinX(), bounds.getMinY(), image.getWidth(), image.getHeight()));
+        node.snapshot(parameters, image);
+        image.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+        return new Rectangle2D(bounds.getMinX(), bounds.getMinY(), width, height);
+    }
+
+    private static long tileHash(int[] pixels, int width, int height, int tx, int ty) {
+        int x0 = tx * TILE_SIZE;
+        int x1 = Math.min(x0 + TILE_SIZE, width);
+        int y1 = Math.min((ty + 1) * TILE_SIZE, height);
+        long hash = FNV_OFFSET;
+        for (int y = ty * TILE_SIZE; y < y1; y++) {
+            int row = y * width;
+            for (int x = x0; x < x1; x++) {
+                hash = (hash ^ pixels[row + x]) * FNV_PRIME;
+            }
+        }
+        return hash;
+    }
+
+    private static int countDifferences(int[] expected, int[] actual, int width, int height, int tx, int ty) {
+        int x0 = tx * TILE_SIZE;
+        int x1 = Math.min(x0 + TILE_SIZE, width);
+        int y1 = Math.min((ty + 1) * TILE_SIZE, height);
+        int count = 0;
+        for (int y = ty * TILE_SIZE; y < y1; y++) {
+            int row = y * width;
+            for (int x = x0; x < x1; x++) {
+                if (expected[row + x] != actual[row + x]) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static Rectangle2D region(int fromTile, int toTile, int ty, int width, int height) {
+        int x = fromTile * TILE_SIZE;
+        int y = ty * TILE_SIZE;
+        return new Rectangle2D(x, y, Math.min(toTile * TILE_SIZE, width) - x, Math.min(y + TILE_SIZE, height) - y);
+    }
+
+    private static int tiles(int size) {
+        return (size + TILE_SIZE - 1) / TILE_SIZE;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import javafx.scene.Node;
+import org.testfx.service.query.NodeQuery;
+
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * State shared by a chain and every chain created from it with {@code $$}.
+ *
+ * @author Andres Almiray
+ */
+final class ChainContext {
+    private final TestFX testfx;
+    private InputMode inputMode;
+    private boolean autoSettle;
+    private SyntheticInput syntheticInput;
+    private QueryScope scope;
+
+    ChainContext(TestFX testfx, InputMode inputMode, boolean autoSettle) {
+        this.testfx = requireNonNull(testfx, "Argument 'testfx' must not be null");
+        this.inputMode = requireNonNull(inputMode, "Argument 'inputMode' must not be null");
+        this.autoSettle = autoSettle;
+    }
+
+    TestFX testfx() {
+        return testfx;
+    }
+
+    InputMode inputMode() {
+        return inputMode;
+    }
+
+    void inputMode(InputMode inputMode) {
+        this.inputMode = requireNonNull(inputMode, "Argument 'inputMode' must not be null");
+    }
+
+    boolean isAutoSettle() {
+        return autoSettle;
+    }
+
+    void autoSettle(boolean autoSettle) {
+        this.autoSettle = autoSettle;
+    }
+
+    ChainContext scope(QueryScope scope) {
+        this.scope = scope;
+        return this;
+    }
+
+    QueryScope scope() {
+        return scope;
+    }
+
+    /**
+     * Returns the roots lookups start from: the scope's roots, or the roots of every target window.
+     */
+    Set<Node> roots() {
+        return scope != null ? scope.roots(testfx) : testfx.fromAll().queryAll();
+    }
+
+    /**
+     * Returns a query positioned at the lookup roots.
+     */
+    NodeQuery from() {
+        return scope != null ? testfx.from(scope.roots(testfx)) : testfx.fromAll();
+    }
+
+    boolean isSynthetic() {
+        return inputMode == InputMode.SYNTHETIC;
+    }
+
+    SyntheticInput syntheticInput() {
+        if (syntheticInput == null) {
+            syntheticInput = new SyntheticInput();
+        }
+        return syntheticInput;
+    }
+
+    /**
+     * Drops the synthetic input state, which remembers the last nodes events were sent to.
+     */
+    void release() {
+        syntheticInput = null;
+    }
+}
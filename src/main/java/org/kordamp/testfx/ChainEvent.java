@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import javafx.scene.Node;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes a single {@code QueryChain} step and where its time went.
+ * <p>
+ * Resolution time covers node lookups and visibility checks made on the calling thread. FX wait
+ * time covers FX thread round trips, event queue settling and {@code waitUntil} conditions. Robot
+ * time is whatever remains, that is mouse and keyboard robot work (including the robot's own
+ * settling) and {@code sleep}.
+ *
+ * @author Andres Almiray
+ */
+public final class ChainEvent {
+    private final String step;
+    private final long chainId;
+    private final String description;
+    private final String selector;
+    private final String threadName;
+    private final long timestamp;
+    private final long durationNanos;
+    private final long resolutionNanos;
+    private final long fxWaitNanos;
+    private final int matchedNodes;
+    private final Node target;
+    private final List<Object> arguments;
+
+    ChainEvent(String step, long chainId, String description, String selector, String threadName, long timestamp,
+               long durationNanos, long resolutionNanos, long fxWaitNanos, int matchedNodes,
+               Node target, Object[] arguments) {
+        this.step = step;
+        this.chainId = chainId;
+        this.description = description;
+        this.selector = selector;
+        this.threadName = threadName;
+        this.timestamp = timestamp;
+        this.durationNanos = durationNanos;
+        this.resolutionNanos = resolutionNanos;
+        this.fxWaitNanos = fxWaitNanos;
+        this.matchedNodes = matchedNodes;
+        this.target = target;
+        this.arguments = arguments != null ? Collections.unmodifiableList(Arrays.asList(arguments)) : Collections.emptyList();
+    }
+
+    /**
+     * The DSL method that was called, such as {@code click} or {@code waitUntil}.
+     */
+    public String getStep() {
+        return step;
+    }
+
+    /**
+     * Identifies the chain the step ran on; unique within the JVM, {@code 0} if there was none.
+     */
+    public long getChainId() {
+        return chainId;
+    }
+
+    /**
+     * The description of the chain, as in {@code the query "#username"}; {@code null} if unknown.
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * The CSS selector of the chain, or {@code null} if it was built from a matcher or predicate.
+     */
+    public String getSelector() {
+        return selector;
+    }
+
+    public String getThreadName() {
+        return threadName;
+    }
+
+    /**
+     * Wall clock time at which the step started, in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public long getResolutionNanos() {
+        return resolutionNanos;
+    }
+
+    public long getFxWaitNanos() {
+        return fxWaitNanos;
+    }
+
+    public long getRobotNanos() {
+        return Math.max(0, durationNanos - resolutionNanos - fxWaitNanos);
+    }
+
+    /**
+     * Number of nodes matched by the last lookup of the step, or {@code -1} if it made none. Lookups
+     * that stop at the first visible node, such as the target of {@code moveTo(String)}, report
+     * {@code 1} when they find one.
+     */
+    public int getMatchedNodes() {
+        return matchedNodes;
+    }
+
+    /**
+     * The node the step resolved or acted on, if any.
+     */
+    public Node getTarget() {
+        return target;
+    }
+
+    /**
+     * Arguments of input steps needed to repeat them, such as the text of {@code write}, the keys of
+     * {@code type}, the buttons of {@code click} or the point of {@code moveTo}; empty otherwise.
+     */
+    public List<Object> getArguments() {
+        return arguments;
+    }
+
+    @Override
+    public String toString() {
+        return "ChainEvent[step=" + step +
+            ", description=" + description +
+            ", duration=" + durationNanos +
+            ", resolution=" + resolutionNanos +
+            ", fxWait=" + fxWaitNanos +
+            ", robot=" + getRobotNanos() +
+            ", matched=" + matchedNodes +
+            ", arguments=" + arguments + "]";
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+/**
+ * Receives one {@code ChainEvent} per {@code QueryChain} step. Listeners are called on the thread
+ * that ran the step and should return quickly.
+ *
+ * @author Andres Almiray
+ */
+@FunctionalInterface
+public interface ChainListener {
+    void onStep(ChainEvent event);
+}
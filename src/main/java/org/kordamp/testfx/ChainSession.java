@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Releases every chain created on a thread between {@code open()} and {@code close()}. Closing a
+ * session drops the nodes, caches and synthetic input state of its chains and, for the outermost
+ * session of the thread, hands the robot its chains used back to the {@code TestFXProvider}.
+ * A session that created no chain leaves the provider untouched
+ * <pre>
+ * try (ChainSession session = ChainSession.open()) {
+ *     $("#username").click().write("jdoe");
+ * }
+ * </pre>
+ * Chains of a closed session fail with an {@code IllegalStateException} when used again.
+ * Sessions hold their chains weakly, so abandoned chains are still collected while the session
+ * is open.
+ *
+ * @author Andres Almiray
+ */
+public final class ChainSession implements AutoCloseable {
+    private static final ThreadLocal<ChainSession> CURRENT = new ThreadLocal<>();
+
+    private final ChainSession parent;
+    private final Thread owner;
+    private final Set<QueryChain> chains = Collections.newSetFromMap(new WeakHashMap<>());
+    private TestFX testfx;
+    private boolean closed;
+
+    private ChainSession(ChainSession parent) {
+        this.parent = parent;
+        this.owner = Thread.currentThread();
+    }
+
+    /**
+     * Opens a session on the calling thread. Sessions may be nested.
+     */
+    public static ChainSession open() {
+        ChainSession session = new ChainSession(CURRENT.get());
+        CURRENT.set(session);
+        SoakMode.sessionOpened();
+        return session;
+    }
+
+    /**
+     * Returns the number of chains of this session that have not been garbage collected.
+     */
+    public int size() {
+        return chains.size();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        if (Thread.currentThread() != owner) {
+            throw new IllegalStateException("A ChainSession must be closed by the thread that opened it");
+        }
+        closed = true;
+        List<QueryChain> released = new ArrayList<>(chains);
+        chains.clear();
+        for (QueryChain chain : released) {
+            chain.release();
+        }
+        CURRENT.set(parent);
+        if (parent == null) {
+            CURRENT.remove();
+            if (testfx != null) {
+                QueryChain.getTestFXProvider().release(testfx);
+            }
+        } else if (parent.testfx == null) {
+            parent.testfx = testfx;
+        }
+        SoakMode.sessionClosed();
+    }
+
+    static void register(QueryChain chain) {
+        ChainSession session = CURRENT.get();
+        if (session != null) {
+            session.chains.add(chain);
+            if (session.testfx == null) {
+                session.testfx = chain.testfx();
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import javafx.application.Platform;
+import javafx.scene.Node;
+import org.testfx.service.query.NodeQuery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Collects per-step timings and hands them to registered {@code ChainListener}s.
+ * <p>
+ * When no listener is registered {@code begin} returns {@code null} and every other method returns
+ * right after a single volatile read, so instrumented steps cost nothing measurable. Steps called
+ * from within another step (for example {@code eraseText} calling {@code type}) are folded into
+ * the outermost one, and calls made on the FX thread (from {@code interact} callbacks, reactive
+ * conditions or batch steps) belong to the step that scheduled them.
+ *
+ * @author Andres Almiray
+ */
+final class ChainTracer {
+    private static final ChainListener[] NO_LISTENERS = new ChainListener[0];
+    private static final ThreadLocal<Trace> CURRENT = new ThreadLocal<>();
+    private static volatile ChainListener[] listeners = NO_LISTENERS;
+
+    private ChainTracer() {
+        // prevent instantiation
+    }
+
+    static synchronized void addListener(ChainListener listener) {
+        requireNonNull(listener, "Argument 'listener' must not be null");
+        List<ChainListener> list = new ArrayList<>(Arrays.asList(listeners));
+        list.add(listener);
+        listeners = list.toArray(new ChainListener[list.size()]);
+    }
+
+    static synchronized void removeListener(ChainListener listener) {
+        List<ChainListener> list = new ArrayList<>(Arrays.asList(listeners));
+        list.remove(listener);
+        listeners = list.isEmpty() ? NO_LISTENERS : list.toArray(new ChainListener[list.size()]);
+    }
+
+    static Trace begin(QueryChain chain, String step) {
+        if (listeners.length == 0 || CURRENT.get() != null || Platform.isFxApplicationThread()) {
+            return null;
+        }
+        Trace trace = new Trace(chain, step);
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    static <T extends QueryChain> T chain(Trace trace, T chain) {
+        if (trace != null) {
+            trace.chain = chain;
+        }
+        return chain;
+    }
+
+    static void end(Trace trace) {
+        if (trace == null) {
+            return;
+        }
+        CURRENT.remove();
+        long duration = System.nanoTime() - trace.start;
+        QueryChain chain = trace.chain;
+        ChainEvent event = new ChainEvent(trace.step, chain != null ? chain.id() : 0L,
+            chain != null ? chain.description() : null, chain != null ? chain.selector() : null,
+            Thread.currentThread().getName(), trace.timestamp,
+            duration, trace.resolutionNanos, trace.fxWaitNanos, trace.matchedNodes, trace.target, trace.arguments);
+        for (ChainListener listener : listeners) {
+            listener.onStep(event);
+        }
+    }
+
+    /**
+     * Returns a start mark for a timed section, or {@code 0} when no step is being traced or when
+     * another section is already being timed, so nested sections are not counted twice.
+     */
+    static long mark() {
+        if (listeners.length == 0) {
+            return 0L;
+        }
+        Trace trace = CURRENT.get();
+        if (trace == null || trace.timing) {
+            return 0L;
+        }
+        trace.timing = true;
+        return System.nanoTime();
+    }
+
+    static void resolved(long mark, NodeQuery query) {
+        if (mark != 0L) {
+            Set<Node> nodes = query.queryAll();
+            Trace trace = CURRENT.get();
+            if (trace != null && trace.target == null && !nodes.isEmpty()) {
+                trace.target = nodes.iterator().next();
+            }
+            resolved(mark, nodes.size());
+        }
+    }
+
+    /**
+     * Records the node the current step acted on.
+     */
+    static void target(Node node) {
+        if (listeners.length == 0) {
+            return;
+        }
+        Trace trace = CURRENT.get();
+        if (trace != null) {
+            trace.target = node;
+        }
+    }
+
+    static void resolved(long mark, int matchedNodes) {
+        Trace trace = mark != 0L ? CURRENT.get() : null;
+        if (trace != null) {
+            trace.timing = false;
+            trace.resolutionNanos += System.nanoTime() - mark;
+            trace.matchedNodes = matchedNodes;
+        }
+    }
+
+    static void fxWaited(long mark) {
+        Trace trace = mark != 0L ? CURRENT.get() : null;
+        if (trace != null) {
+            trace.timing = false;
+            trace.fxWaitNanos += System.nanoTime() - mark;
+        }
+    }
+
+    static final class Trace {
+        private final String step;
+        private final long timestamp = System.currentTimeMillis();
+        private final long start = System.nanoTime();
+        private QueryChain chain;
+        private long resolutionNanos;
+        private long fxWaitNanos;
+        private int matchedNodes = -1;
+        private boolean timing;
+        private Node target;
+        private Object[] arguments;
+
+        private Trace(QueryChain chain, String step) {
+            this.chain = chain;
+            this.step = step;
+        }
+
+        /**
+         * Records the arguments of the step. Callers only build them once a trace exists, so
+         * untraced steps never allocate them.
+         */
+        void arguments(Object... arguments) {
+            this.arguments = arguments;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import com.google.common.base.Predicate;
+import javafx.scene.Node;
+import org.hamcrest.Matcher;
+import org.testfx.service.query.NodeQuery;
+
+import java.util.function.Function;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A selector, matcher or predicate prepared once for repeated use. The description used in error
+ * messages is computed up front, and plain {@code #id} and {@code .class} selectors are turned into
+ * node filters, so resolving them never goes through the CSS selector parser.
+ * <p>
+ * Compiled queries are immutable and can be shared, for example as constants of a page object
+ * <pre>
+ * static final CompiledQuery USERNAME = CompiledQuery.of("#username");
+ *
+ * $(USERNAME).click().write("jdoe");
+ * </pre>
+ *
+ * @author Andres Almiray
+ */
+public final class CompiledQuery {
+    private final String selector;
+    private final String description;
+    private final Predicate<Node> filter;
+    private final Function<NodeQuery, NodeQuery> lookup;
+
+    private CompiledQuery(String selector, String description, Predicate<Node> filter, Function<NodeQuery, NodeQuery> lookup) {
+        this.selector = selector;
+        this.description = description;
+        this.filter = filter;
+        this.lookup = lookup;
+    }
+
+    public static CompiledQuery of(String selector) {
+        requireNonNull(selector, "Argument 'selector' must not be null");
+        if (selector.trim().isEmpty()) {
+            throw new IllegalArgumentException("Argument 'selector' must not be blank");
+        }
+        Predicate<Node> filter = VisibleNodes.selectorFilter(selector);
+        Function<NodeQuery, NodeQuery> lookup = filter != null ? query -> query.lookup(filter) : query -> query.lookup(selector);
+        return new CompiledQuery(selector, "the query \"" + selector + "\"", filter, lookup);
+    }
+
+    public static <T extends Node> CompiledQuery of(Matcher<T> matcher) {
+        requireNonNull(matcher, "Argument 'matcher' must not be null");
+        return new CompiledQuery(null, "the matcher \"" + matcher.toString() + "\"", matcher::matches, query -> query.lookup(matcher));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T extends Node> CompiledQuery of(Predicate<T> predicate) {
+        requireNonNull(predicate, "Argument 'predicate' must not be null");
+        Predicate<Node> filter = node -> {
+            try {
+                return predicate.apply((T) node);
+            } catch (ClassCastException e) {
+                // a typed predicate does not match nodes of other types, same as NodeQuery.lookup
+                return false;
+            }
+        };
+        return new CompiledQuery(null, "the predicate", filter, query -> query.lookup(predicate));
+    }
+
+    /**
+     * Compiles {@code matcher} for nodes of {@code type}. The type check runs first, so the
+     * matcher is only evaluated for nodes of that type.
+     */
+    public static <T extends Node> CompiledQuery of(Class<T> type, Matcher<? super T> matcher) {
+        requireNonNull(type, "Argument 'type' must not be null");
+        requireNonNull(matcher, "Argument 'matcher' must not be null");
+        Predicate<Node> filter = node -> type.isInstance(node) && matcher.matches(node);
+        return new CompiledQuery(null, "the matcher \"" + matcher.toString() + "\" on " + type.getSimpleName(), filter, query -> query.lookup(filter));
+    }
+
+    /**
+     * Compiles {@code predicate} for nodes of {@code type}. The type check runs first, so the
+     * predicate is only evaluated for nodes of that type.
+     */
+    public static <T extends Node> CompiledQuery of(Class<T> type, Predicate<? super T> predicate) {
+        requireNonNull(type, "Argument 'type' must not be null");
+        requireNonNull(predicate, "Argument 'predicate' must not be null");
+        Predicate<Node> filter = node -> type.isInstance(node) && predicate.apply(type.cast(node));
+        return new CompiledQuery(null, "the predicate on " + type.getSimpleName(), filter, query -> query.lookup(filter));
+    }
+
+    /**
+     * Returns a query matching {@code node} only, described as {@code description}.
+     */
+    static CompiledQuery of(Node node, String description) {
+        Predicate<Node> filter = candidate -> candidate == node;
+        return new CompiledQuery(null, description, filter, query -> query.lookup(filter));
+    }
+
+    /**
+     * Returns the CSS selector of this query, or {@code null} for matchers and predicates.
+     */
+    public String getSelector() {
+        return selector;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+
+    /**
+     * Returns the filter testing this query node by node, or {@code null} when the query is a
+     * selector that needs the CSS selector parser.
+     */
+    Predicate<Node> filter() {
+        return filter;
+    }
+
+    /**
+     * Returns every node matching this query below the lookup roots of {@code context}.
+     */
+    NodeQuery lookup(ChainContext context) {
+        SelectorIndex index = QueryChain.getSelectorIndex();
+        if (index != null && selector != null && filter != null) {
+            return context.testfx().from(index.lookup(selector, context.roots()));
+        }
+        return lookup.apply(context.from());
+    }
+
+    /**
+     * Returns the first visible node matching this query, or {@code null}. Walks the scene graph
+     * and stops at the first hit whenever the query can be tested node by node.
+     */
+    Node firstVisible(ChainContext context) {
+        // an index answers simple selectors directly; without one they are matched while walking
+        if (filter != null && (selector == null || QueryChain.getSelectorIndex() == null)) {
+            return VisibleNodes.first(context.roots(), filter);
+        }
+        return VisibleNodes.first(lookup(context).queryAll());
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Waits on the pulses of the FX toolkit instead of posting runnables with sleeps in between.
+ * <p>
+ * Animation timers run at the start of a pulse, before its CSS and layout passes. A timer is
+ * started behind the events already queued; once it has been called for the pulse after the
+ * requested ones, those pulses have fully finished. A running timer keeps pulses coming, so the
+ * wait costs one or two frames rather than a fixed number of sleeps.
+ *
+ * @author Andres Almiray
+ */
+final class FxPulses {
+    static final long PULSE_TIMEOUT_SECONDS = 5;
+
+    private FxPulses() {
+        // prevent instantiation
+    }
+
+    /**
+     * Completes once {@code pulses} full pulses have finished and none of {@code scenes} has a
+     * layout pass pending; waits for further pulses while one has.
+     */
+    static CompletableFuture<Void> whenPulsed(int pulses, Collection<Scene> scenes) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        Platform.runLater(() -> new AnimationTimer() {
+            private int calls;
+
+            @Override
+            public void handle(long now) {
+                if (future.isDone()) {
+                    stop();
+                } else if (++calls > pulses && isLaidOut(scenes)) {
+                    stop();
+                    future.complete(null);
+                }
+            }
+        }.start());
+        return future;
+    }
+
+    /**
+     * Blocks until {@code pulses} full pulses have finished and {@code scenes} are laid out. Returns
+     * right away on the FX thread, which can not wait for its own pulses.
+     */
+    static void awaitPulses(int pulses, Collection<Scene> scenes, long timeout, TimeUnit unit) {
+        if (Platform.isFxApplicationThread()) {
+            return;
+        }
+        CompletableFuture<Void> future = whenPulsed(Math.max(1, pulses), scenes);
+        try {
+            future.get(timeout, unit);
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            throw new RuntimeException("The FX application did not finish a pulse within " + timeout + " " + unit, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static boolean isLaidOut(Collection<Scene> scenes) {
+        for (Scene scene : scenes) {
+            Parent root = scene.getRoot();
+            if (root != null && root.isNeedsLayout()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
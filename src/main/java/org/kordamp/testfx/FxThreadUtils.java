@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import javafx.application.Platform;
+
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.testfx.util.WaitForAsyncUtils.asyncFx;
+import static org.testfx.util.WaitForAsyncUtils.waitFor;
+
+/**
+ * @author Andres Almiray
+ */
+final class FxThreadUtils {
+    private FxThreadUtils() {
+        // prevent instantiation
+    }
+
+    static void runFx(Runnable runnable) {
+        if (Platform.isFxApplicationThread()) {
+            runnable.run();
+        } else {
+            long mark = ChainTracer.mark();
+            waitFor(asyncFx(runnable));
+            ChainTracer.fxWaited(mark);
+        }
+    }
+
+    static <T> T callFx(Callable<T> callable) {
+        if (Platform.isFxApplicationThread()) {
+            try {
+                return callable.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+        long mark = ChainTracer.mark();
+        T result = waitFor(asyncFx(callable));
+        ChainTracer.fxWaited(mark);
+        return result;
+    }
+
+    /**
+     * Schedules {@code callable} on the FX thread and returns a future for its result without
+     * waiting for it.
+     */
+    static <T> CompletableFuture<T> supplyFx(Callable<T> callable) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Platform.runLater(() -> {
+            try {
+                future.complete(callable.call());
+            } catch (Throwable throwable) {
+                future.completeExceptionally(throwable);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Waits until pending events on the FX thread have been processed and the pulse following
+     * them has finished.
+     */
+    static void awaitFxEvents() {
+        awaitFxEvents(1);
+    }
+
+    /**
+     * Waits until pending events on the FX thread have been processed and {@code pulses} pulses
+     * have finished after them.
+     */
+    static void awaitFxEvents(int pulses) {
+        long mark = ChainTracer.mark();
+        FxPulses.awaitPulses(pulses, Collections.emptyList(), FxPulses.PULSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        ChainTracer.fxWaited(mark);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * Switches the FX toolkit and the {@code TestFX} robot to Monocle's headless platform, so chains
+ * run without a display server. Rendering goes through the software pipeline, input is injected
+ * by the glass robot and {@code capture()} renders nodes offscreen.
+ * <p>
+ * The platform is picked when the toolkit starts, so {@code enable()} must be called before the
+ * first stage is registered. Builds may instead pass {@code -Pheadless} to Gradle, which puts
+ * Monocle on the test runtime classpath and sets the same system properties.
+ *
+ * @author Andres Almiray
+ */
+public final class HeadlessMode {
+    public static final String PROPERTY = "testfx.headless";
+
+    private static final Map<String, String> PROPERTIES;
+
+    static {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put(PROPERTY, "true");
+        properties.put("testfx.robot", "glass");
+        properties.put("glass.platform", "Monocle");
+        properties.put("monocle.platform", "Headless");
+        properties.put("prism.order", "sw");
+        properties.put("prism.text", "t2k");
+        properties.put("java.awt.headless", "true");
+        PROPERTIES = unmodifiableMap(properties);
+    }
+
+    private HeadlessMode() {
+        // prevent instantiation
+    }
+
+    /**
+     * Sets the system properties that select the headless platform and robot.
+     */
+    public static void enable() {
+        PROPERTIES.forEach(System::setProperty);
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(PROPERTY);
+    }
+
+    /**
+     * Returns the system properties set by {@code enable()}.
+     */
+    public static Map<String, String> properties() {
+        return PROPERTIES;
+    }
+}
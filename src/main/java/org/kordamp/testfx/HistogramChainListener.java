@@ -0,0 +1,188 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates {@code ChainEvent}s in memory, per step name, into duration histograms and phase
+ * totals. Recording an event only increments a handful of counters and allocates nothing once a
+ * step name has been seen.
+ * <p>
+ * Durations are bucketed per power of two with 8 linear sub-buckets each, so percentiles are
+ * accurate to within 12.5%.
+ *
+ * @author Andres Almiray
+ */
+public final class HistogramChainListener implements ChainListener {
+    private final ConcurrentMap<String, Stats> stats = new ConcurrentHashMap<>();
+
+    @Override
+    public void onStep(ChainEvent event) {
+        stats.computeIfAbsent(event.getStep(), k -> new Stats()).record(event);
+    }
+
+    /**
+     * Returns the statistics gathered for {@code step}, or {@code null} if it was never recorded.
+     */
+    public Stats get(String step) {
+        return stats.get(step);
+    }
+
+    /**
+     * Returns the statistics of every recorded step, sorted by step name.
+     */
+    public Map<String, Stats> getAll() {
+        return new TreeMap<>(stats);
+    }
+
+    public void reset() {
+        stats.clear();
+    }
+
+    /**
+     * Formats one line per step with its count, mean, p50, p99, max and phase split, in milliseconds.
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, Stats> entry : getAll().entrySet()) {
+            Stats s = entry.getValue();
+            report.append(String.format("%-20s count=%d mean=%.3f p50=%.3f p99=%.3f max=%.3f resolution=%.3f fxWait=%.3f robot=%.3f%n",
+                entry.getKey(), s.getCount(), millis(s.getMeanNanos()), millis(s.percentile(50)), millis(s.percentile(99)),
+                millis(s.getMaxNanos()), millis(s.getResolutionNanos()), millis(s.getFxWaitNanos()), millis(s.getRobotNanos())));
+        }
+        return report.toString();
+    }
+
+    @Override
+    public String toString() {
+        return report();
+    }
+
+    private static double millis(double nanos) {
+        return nanos / 1_000_000d;
+    }
+
+    public static final class Stats {
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+        static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder resolutionNanos = new LongAdder();
+        private final LongAdder fxWaitNanos = new LongAdder();
+        private final LongAdder robotNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+
+        private Stats() {
+        }
+
+        private void record(ChainEvent event) {
+            long duration = Math.max(0, event.getDurationNanos());
+            buckets.incrementAndGet(bucketOf(duration));
+            count.increment();
+            totalNanos.add(duration);
+            resolutionNanos.add(event.getResolutionNanos());
+            fxWaitNanos.add(event.getFxWaitNanos());
+            robotNanos.add(event.getRobotNanos());
+            maxNanos.accumulate(duration);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        public double getMeanNanos() {
+            long n = getCount();
+            return n == 0 ? 0d : (double) getTotalNanos() / n;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        public long getResolutionNanos() {
+            return resolutionNanos.sum();
+        }
+
+        public long getFxWaitNanos() {
+            return fxWaitNanos.sum();
+        }
+
+        public long getRobotNanos() {
+            return robotNanos.sum();
+        }
+
+        /**
+         * Returns the upper bound of the bucket holding the given percentile (0-100) of durations.
+         */
+        public long percentile(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("Argument 'percentile' must be between 0 and 100");
+            }
+            long total = 0;
+            long[] counts = new long[buckets.length()];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            if (total == 0) {
+                return 0L;
+            }
+            long rank = Math.max(1, (long) Math.ceil(total * percentile / 100d));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBoundOf(i), getMaxNanos());
+                }
+            }
+            return getMaxNanos();
+        }
+
+        static int bucketOf(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+        }
+
+        static long upperBoundOf(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            long subBucket = bucket % SUB_BUCKETS;
+            long width = 1L << (exponent - SUB_BUCKET_BITS);
+            return (1L << exponent) + (subBucket + 1) * width - 1;
+        }
+    }
+}
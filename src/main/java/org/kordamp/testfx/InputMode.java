@@ -0,0 +1,33 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+/**
+ * Selects how {@code QueryChain} delivers mouse and keyboard input.
+ *
+ * @author Andres Almiray
+ */
+public enum InputMode {
+    /**
+     * Moves the real cursor and presses real keys through the {@code FxRobot}.
+     */
+    ROBOT,
+
+    /**
+     * Builds JavaFX events and fires them straight at the target node, with no cursor travel.
+     */
+    SYNTHETIC
+}
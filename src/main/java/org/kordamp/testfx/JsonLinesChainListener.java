@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Writes every {@code ChainEvent} as a single line of JSON, for example
+ * <pre>
+ * {"timestamp":1490000000000,"thread":"main","step":"click","description":"the query \"#ok\"",
+ *  "durationNanos":5120000,"resolutionNanos":310000,"fxWaitNanos":1200000,"robotNanos":3610000,"matchedNodes":1}
+ * </pre>
+ * (shown wrapped). Lines are written under a lock and flushed as they are written.
+ *
+ * @author Andres Almiray
+ */
+public final class JsonLinesChainListener implements ChainListener, Closeable {
+    private final Writer writer;
+    private final StringBuilder line = new StringBuilder(256);
+
+    public JsonLinesChainListener(Writer writer) {
+        this.writer = requireNonNull(writer, "Argument 'writer' must not be null");
+    }
+
+    /**
+     * Appends events to {@code file}, creating it if needed.
+     */
+    public JsonLinesChainListener(Path file) throws IOException {
+        this(Files.newBufferedWriter(requireNonNull(file, "Argument 'file' must not be null"), StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+    }
+
+    @Override
+    public synchronized void onStep(ChainEvent event) {
+        line.setLength(0);
+        line.append("{\"timestamp\":").append(event.getTimestamp());
+        line.append(",\"thread\":");
+        appendString(event.getThreadName());
+        line.append(",\"step\":");
+        appendString(event.getStep());
+        line.append(",\"description\":");
+        appendString(event.getDescription());
+        line.append(",\"durationNanos\":").append(event.getDurationNanos());
+        line.append(",\"resolutionNanos\":").append(event.getResolutionNanos());
+        line.append(",\"fxWaitNanos\":").append(event.getFxWaitNanos());
+        line.append(",\"robotNanos\":").append(event.getRobotNanos());
+        line.append(",\"matchedNodes\":").append(event.getMatchedNodes());
+        line.append("}\n");
+        try {
+            writer.write(line.toString());
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    private void appendString(String value) {
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    line.append("\\\"");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+            }
+        }
+        line.append('"');
+    }
+}
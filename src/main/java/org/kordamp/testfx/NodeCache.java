@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
+import javafx.beans.WeakInvalidationListener;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.collections.WeakListChangeListener;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tracks the scene graph around a set of resolved nodes and flags it as stale as soon as any of
+ * them is detached, hidden or has a sibling list changed along its ancestor path.
+ * <p>
+ * All listeners are registered and removed on the FX thread. Listeners are weak, so an abandoned
+ * chain does not keep its cache reachable through the scene graph.
+ *
+ * @author Andres Almiray
+ */
+final class NodeCache {
+    private final InvalidationListener invalidationListener = observable -> invalidate();
+    private final ListChangeListener<Node> childrenListener = change -> invalidate();
+    private final WeakInvalidationListener weakInvalidationListener = new WeakInvalidationListener(invalidationListener);
+    private final WeakListChangeListener<Node> weakChildrenListener = new WeakListChangeListener<>(childrenListener);
+
+    private final List<Observable> observedProperties = new ArrayList<>();
+    private final List<ObservableList<Node>> observedChildren = new ArrayList<>();
+    private volatile boolean valid;
+
+    boolean isValid() {
+        return valid;
+    }
+
+    void track(Collection<? extends Node> nodes) {
+        untrack();
+        if (nodes.isEmpty()) {
+            // nothing to listen to; keep re-resolving until the query matches something
+            return;
+        }
+
+        Set<Parent> ancestors = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Node node : nodes) {
+            observe(node.sceneProperty());
+            observe(node.visibleProperty());
+            for (Parent parent = node.getParent(); parent != null && ancestors.add(parent); parent = parent.getParent()) {
+                ObservableList<Node> children = parent.getChildrenUnmodifiable();
+                children.addListener(weakChildrenListener);
+                observedChildren.add(children);
+            }
+        }
+        valid = true;
+    }
+
+    void invalidate() {
+        valid = false;
+        untrack();
+    }
+
+    private void observe(Observable observable) {
+        observable.addListener(weakInvalidationListener);
+        observedProperties.add(observable);
+    }
+
+    private void untrack() {
+        for (Observable observable : observedProperties) {
+            observable.removeListener(weakInvalidationListener);
+        }
+        for (ObservableList<Node> children : observedChildren) {
+            children.removeListener(weakChildrenListener);
+        }
+        observedProperties.clear();
+        observedChildren.clear();
+    }
+}
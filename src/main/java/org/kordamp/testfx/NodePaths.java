@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.stage.Window;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Describes nodes by their position below the root of their scene, as in
+ * {@code VBox/1:HBox/0:Button}: the class of the root followed by the child index and class of
+ * every node on the way down. Paths survive a restart of the application as long as its layout
+ * does not change.
+ *
+ * @author Andres Almiray
+ */
+final class NodePaths {
+    private static final char SEPARATOR = '/';
+    private static final char INDEX_SEPARATOR = ':';
+
+    private NodePaths() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns the path of {@code node}, or {@code null} if it is not part of a scene.
+     */
+    static String pathOf(Node node) {
+        if (node == null || node.getScene() == null) {
+            return null;
+        }
+        Deque<String> segments = new ArrayDeque<>();
+        Node current = node;
+        for (Parent parent = current.getParent(); parent != null; current = parent, parent = parent.getParent()) {
+            int index = parent.getChildrenUnmodifiable().indexOf(current);
+            if (index < 0) {
+                return null;
+            }
+            segments.push(index + String.valueOf(INDEX_SEPARATOR) + current.getClass().getSimpleName());
+        }
+        if (current != node.getScene().getRoot()) {
+            return null;
+        }
+        segments.push(current.getClass().getSimpleName());
+
+        StringBuilder path = new StringBuilder();
+        for (String segment : segments) {
+            if (path.length() > 0) {
+                path.append(SEPARATOR);
+            }
+            path.append(segment);
+        }
+        return path.toString();
+    }
+
+    /**
+     * Returns the first node reachable through {@code path} in any of {@code windows}, or
+     * {@code null} if none matches.
+     */
+    static Node resolve(String path, Collection<Window> windows) {
+        String[] segments = path.split(String.valueOf(SEPARATOR));
+        for (Window window : windows) {
+            Scene scene = window.getScene();
+            Node node = scene != null ? resolve(segments, scene.getRoot()) : null;
+            if (node != null) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    private static Node resolve(String[] segments, Node root) {
+        if (root == null || !root.getClass().getSimpleName().equals(segments[0])) {
+            return null;
+        }
+        Node current = root;
+        for (int i = 1; i < segments.length; i++) {
+            if (!(current instanceof Parent)) {
+                return null;
+            }
+            String segment = segments[i];
+            int split = segment.indexOf(INDEX_SEPARATOR);
+            int index = Integer.parseInt(segment.substring(0, split));
+            List<Node> children = ((Parent) current).getChildrenUnmodifiable();
+            if (index >= children.size() || !children.get(index).getClass().getSimpleName().equals(segment.substring(split + 1))) {
+                return null;
+            }
+            current = children.get(index);
+        }
+        return current;
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import com.google.common.base.Predicate;
+import javafx.scene.Node;
+import org.hamcrest.Matcher;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static java.util.Objects.requireNonNull;
+import static org.kordamp.testfx.FxThreadUtils.awaitFxEvents;
+import static org.kordamp.testfx.FxThreadUtils.callFx;
+
+/**
+ * Every node matched by a chain, resolved once. Each operation visits the whole set in a single FX
+ * thread round trip and keeps going past failing nodes; when any node failed, one
+ * {@code AssertionError} reports all of them.
+ *
+ * @author Andres Almiray
+ */
+public final class NodeSet {
+    private static final int MAX_REPORTED_FAILURES = 20;
+
+    private final QueryChain chain;
+    private final List<Node> nodes;
+
+    NodeSet(QueryChain chain, Collection<Node> nodes) {
+        this.chain = requireNonNull(chain, "Argument 'chain' must not be null");
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+    }
+
+    /**
+     * Returns the chain this set was resolved from.
+     */
+    public QueryChain chain() {
+        return chain;
+    }
+
+    public List<Node> nodes() {
+        return nodes;
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    public <T extends Node> NodeSet verifyThat(Matcher<T> matcher) {
+        requireNonNull(matcher, "Argument 'matcher' must not be null");
+        ChainTracer.Trace trace = ChainTracer.begin(chain, "all.verifyThat");
+        try {
+            verifyNotEmpty();
+            run("verifyThat", node -> {
+                @SuppressWarnings("unchecked")
+                T typed = (T) node;
+                QueryBatch.verify(typed, matcher);
+                return null;
+            });
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
+    }
+
+    public <T extends Node> NodeSet verifyThat(Predicate<T> predicate) {
+        requireNonNull(predicate, "Argument 'predicate' must not be null");
+        ChainTracer.Trace trace = ChainTracer.begin(chain, "all.verifyThat");
+        try {
+            verifyNotEmpty();
+            run("verifyThat", node -> {
+                @SuppressWarnings("unchecked")
+                T typed = (T) node;
+                if (!predicate.apply(typed)) {
+                    throw new AssertionError("Expected: node to satisfy " + predicate);
+                }
+                return null;
+            });
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
+    }
+
+    /**
+     * Passes every node, cast to {@code type}, to {@code consumer} on the FX thread.
+     */
+    public <T extends Node> NodeSet forEach(Class<T> type, Consumer<T> consumer) {
+        requireNonNull(type, "Argument 'type' must not be null");
+        requireNonNull(consumer, "Argument 'consumer' must not be null");
+        ChainTracer.Trace trace = ChainTracer.begin(chain, "all.forEach");
+        try {
+            run("forEach", node -> {
+                consumer.accept(type.cast(node));
+                return null;
+            });
+            awaitFxEvents();
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
+    }
+
+    /**
+     * Applies {@code function} to every node, cast to {@code type}, on the FX thread.
+     *
+     * @return the results, in the order of {@code nodes()}
+     */
+    public <T extends Node, R> List<R> interactAll(Class<T> type, Function<T, R> function) {
+        requireNonNull(type, "Argument 'type' must not be null");
+        requireNonNull(function, "Argument 'function' must not be null");
+        ChainTracer.Trace trace = ChainTracer.begin(chain, "all.interactAll");
+        try {
+            List<R> results = run("interactAll", node -> function.apply(type.cast(node)));
+            awaitFxEvents();
+            return results;
+        } finally {
+            ChainTracer.end(trace);
+        }
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // PRIVATE METHODS.
+    //---------------------------------------------------------------------------------------------
+
+    /**
+     * Fails verifications of an empty set, which would otherwise pass without checking anything.
+     */
+    private void verifyNotEmpty() {
+        if (nodes.isEmpty()) {
+            throw new AssertionError("verifyThat failed, " + chain.description() + " matched no nodes.");
+        }
+    }
+
+    private <R> List<R> run(String operation, Function<Node, R> action) {
+        List<R> results = new ArrayList<>(nodes.size());
+        List<Failure> failures = callFx(() -> {
+            List<Failure> failed = new ArrayList<>();
+            for (int i = 0; i < nodes.size(); i++) {
+                try {
+                    results.add(action.apply(nodes.get(i)));
+                } catch (Exception | AssertionError e) {
+                    results.add(null);
+                    failed.add(new Failure(i, nodes.get(i), e));
+                }
+            }
+            return failed;
+        });
+        if (!failures.isEmpty()) {
+            throw failure(operation, failures);
+        }
+        return Collections.unmodifiableList(results);
+    }
+
+    private AssertionError failure(String operation, List<Failure> failures) {
+        StringBuilder message = new StringBuilder(operation).append(" failed for ")
+            .append(failures.size()).append(" of ").append(nodes.size()).append(" nodes of ")
+            .append(chain.description()).append(':');
+        List<Failure> reported = failures.subList(0, Math.min(failures.size(), MAX_REPORTED_FAILURES));
+        for (Failure failure : reported) {
+            message.append("\n  node ").append(failure.index).append(' ').append(describe(failure.node))
+                .append(": ").append(failure.cause.getMessage() != null ? failure.cause.getMessage() : failure.cause);
+        }
+        if (failures.size() > reported.size()) {
+            message.append("\n  ... and ").append(failures.size() - reported.size()).append(" more");
+        }
+
+        AssertionError error = new AssertionError(message.toString(), reported.get(0).cause);
+        for (Failure failure : reported.subList(1, reported.size())) {
+            error.addSuppressed(failure.cause);
+        }
+        return error;
+    }
+
+    private static String describe(Node node) {
+        String name = node.getClass().getSimpleName();
+        return node.getId() != null ? name + "#" + node.getId() : name;
+    }
+
+    private static final class Failure {
+        private final int index;
+        private final Node node;
+        private final Throwable cause;
+
+        private Failure(int index, Node node, Throwable cause) {
+            this.index = index;
+            this.node = node;
+            this.cause = cause;
+        }
+    }
+}
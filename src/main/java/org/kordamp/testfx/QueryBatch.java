@@ -0,0 +1,264 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import com.google.common.base.Predicate;
+import javafx.scene.Node;
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static java.util.Objects.requireNonNull;
+import static org.kordamp.testfx.FxThreadUtils.runFx;
+import static org.kordamp.testfx.FxThreadUtils.awaitFxEvents;
+
+/**
+ * Queues interaction, lookup and verification steps and runs them in a single FX thread round
+ * trip, settling the event queue once at the end.
+ * <p>
+ * A failed verification is recorded and the remaining steps keep running. A failed interaction or
+ * lookup skips every step after it, as they most likely depend on it.
+ *
+ * @author Andres Almiray
+ */
+public final class QueryBatch {
+    public enum Status {
+        PENDING, PASSED, FAILED, SKIPPED
+    }
+
+    private final QueryChain chain;
+    private final List<Step> steps = new ArrayList<>();
+    private QueryChain lastChain;
+
+    QueryBatch(QueryChain chain) {
+        this.chain = requireNonNull(chain, "Argument 'chain' must not be null");
+        this.lastChain = chain;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // STEPS.
+    //---------------------------------------------------------------------------------------------
+
+    public QueryBatch interact(Runnable runnable) {
+        requireNonNull(runnable, "Argument 'runnable' must not be null");
+        return step("interact", false, current -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    public <T> QueryBatch interact(Callable<T> callable) {
+        requireNonNull(callable, "Argument 'callable' must not be null");
+        return step("interact", false, current -> callable.call());
+    }
+
+    public <T extends Node, R> QueryBatch interact(Class<T> type, Function<T, R> function) {
+        requireNonNull(type, "Argument 'type' must not be null");
+        requireNonNull(function, "Argument 'function' must not be null");
+        return step("interact", false, current -> function.apply(type.cast(current.node())));
+    }
+
+    public <T extends Node> QueryBatch interact(Class<T> type, Consumer<T> consumer) {
+        requireNonNull(type, "Argument 'type' must not be null");
+        requireNonNull(consumer, "Argument 'consumer' must not be null");
+        return step("interact", false, current -> {
+            consumer.accept(type.cast(current.node()));
+            return null;
+        });
+    }
+
+    public QueryBatch $$(String query) {
+        return step("$$(\"" + query + "\")", false, current -> current.$$(query));
+    }
+
+    public <T extends Node> QueryBatch $$(Matcher<T> query) {
+        return step("$$(" + query + ")", false, current -> current.$$(query));
+    }
+
+    public <T extends Node> QueryBatch $$(Predicate<T> query) {
+        return step("$$(predicate)", false, current -> current.$$(query));
+    }
+
+    public QueryBatch $$(CompiledQuery query) {
+        return step("$$(" + query + ")", false, current -> current.$$(query));
+    }
+
+    public <T extends Node> QueryBatch verifyThat(Matcher<T> matcher) {
+        requireNonNull(matcher, "Argument 'matcher' must not be null");
+        return step("verifyThat(" + matcher + ")", true, current -> {
+            verify(current.node(), matcher);
+            return null;
+        });
+    }
+
+    public <T extends Node> QueryBatch verifyThat(Predicate<T> predicate) {
+        requireNonNull(predicate, "Argument 'predicate' must not be null");
+        return step("verifyThat(predicate)", true, current -> {
+            T node = current.node();
+            if (!predicate.apply(node)) {
+                throw new AssertionError("Expected: predicate to match " + node);
+            }
+            return null;
+        });
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // EXECUTION.
+    //---------------------------------------------------------------------------------------------
+
+    /**
+     * Runs every queued step and reports the outcome of each one without throwing.
+     */
+    public List<Step> execute() {
+        ChainTracer.Trace trace = ChainTracer.begin(chain, "batch");
+        try {
+            runFx(() -> {
+                QueryChain current = chain;
+                boolean aborted = false;
+                for (Step step : steps) {
+                    if (aborted) {
+                        step.complete(Status.SKIPPED, null, null);
+                        continue;
+                    }
+                    try {
+                        Object result = step.action.apply(current);
+                        if (result instanceof QueryChain) {
+                            current = (QueryChain) result;
+                        }
+                        step.complete(Status.PASSED, result, null);
+                    } catch (Throwable throwable) {
+                        step.complete(Status.FAILED, null, throwable);
+                        aborted = !step.verification;
+                    }
+                }
+                lastChain = current;
+            });
+            awaitFxEvents();
+            return Collections.unmodifiableList(steps);
+        } finally {
+            ChainTracer.end(trace);
+        }
+    }
+
+    /**
+     * Runs every queued step and fails with an {@code AssertionError} listing each failed step.
+     *
+     * @return the chain the last step operated on
+     */
+    public QueryChain commit() {
+        List<Throwable> failures = new ArrayList<>();
+        StringBuilder message = new StringBuilder("Batch failed:");
+        for (Step step : execute()) {
+            if (step.status == Status.FAILED) {
+                message.append("\n  step ").append(step.index).append(' ').append(step.description)
+                    .append(" failed: ").append(describe(step.failure));
+                failures.add(step.failure);
+            }
+        }
+        if (!failures.isEmpty()) {
+            AssertionError error = new AssertionError(message.toString(), failures.get(0));
+            for (Throwable failure : failures.subList(1, failures.size())) {
+                error.addSuppressed(failure);
+            }
+            throw error;
+        }
+        return lastChain;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // PRIVATE MEMBERS.
+    //---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the message of {@code failure}, or its class name when it has none.
+     */
+    private static String describe(Throwable failure) {
+        return failure.getMessage() != null ? failure.getMessage() : failure.toString();
+    }
+
+    private QueryBatch step(String description, boolean verification, Action action) {
+        steps.add(new Step(steps.size() + 1, description, verification, action));
+        return this;
+    }
+
+    static <T> void verify(T node, Matcher<? super T> matcher) {
+        if (!matcher.matches(node)) {
+            Description description = new StringDescription();
+            description.appendText("Expected: ").appendDescriptionOf(matcher).appendText("\n     but: ");
+            matcher.describeMismatch(node, description);
+            throw new AssertionError(description.toString());
+        }
+    }
+
+    private interface Action {
+        Object apply(QueryChain chain) throws Exception;
+    }
+
+    public static final class Step {
+        private final int index;
+        private final String description;
+        private final boolean verification;
+        private final Action action;
+        private Status status = Status.PENDING;
+        private Object result;
+        private Throwable failure;
+
+        private Step(int index, String description, boolean verification, Action action) {
+            this.index = index;
+            this.description = description;
+            this.verification = verification;
+            this.action = action;
+        }
+
+        private void complete(Status status, Object result, Throwable failure) {
+            this.status = status;
+            this.result = result;
+            this.failure = failure;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public Object getResult() {
+            return result;
+        }
+
+        public Throwable getFailure() {
+            return failure;
+        }
+
+        @Override
+        public String toString() {
+            return "step " + index + " " + description + " " + status;
+        }
+    }
+}
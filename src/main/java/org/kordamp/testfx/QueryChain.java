@@ -15,96 +15,395 @@
  */
 package org.kordamp.testfx;
 
-import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
+import javafx.animation.Animation;
+import javafx.application.Platform;
+import javafx.beans.Observable;
+import javafx.beans.value.ObservableBooleanValue;
+import javafx.event.Event;
 import javafx.geometry.Bounds;
 import javafx.geometry.HorizontalDirection;
 import javafx.geometry.Point2D;
 import javafx.geometry.VerticalDirection;
 import javafx.scene.Node;
 import javafx.scene.Scene;
+import javafx.scene.control.TextInputControl;
 import javafx.scene.image.Image;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyCodeCombination;
 import javafx.scene.input.MouseButton;
 import javafx.stage.Window;
+import javafx.stage.WindowEvent;
 import org.hamcrest.Matcher;
 import org.testfx.api.FxAssert;
 import org.testfx.api.FxRobotException;
 import org.testfx.service.query.NodeQuery;
 import org.testfx.service.query.PointQuery;
-import org.testfx.util.WaitForAsyncUtils;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
 import static java.util.Objects.requireNonNull;
-import static org.testfx.util.NodeQueryUtils.isVisible;
-import static org.testfx.util.WaitForAsyncUtils.asyncFx;
-import static org.testfx.util.WaitForAsyncUtils.waitFor;
-import static org.testfx.util.WaitForAsyncUtils.waitForFxEvents;
+import static org.kordamp.testfx.FxThreadUtils.callFx;
+import static org.kordamp.testfx.FxThreadUtils.runFx;
+import static org.kordamp.testfx.FxThreadUtils.awaitFxEvents;
 
 /**
  * @author Andres Almiray
  */
 public abstract class QueryChain {
+    private static final String ERROR_BASELINE_NULL = "Argument 'baseline' must not be null";
     private static final String ERROR_CONDITION_NULL = "Argument 'condition' must not be null";
     private static final String ERROR_MATCHER_NULL = "Argument 'matcher' must not be null";
     private static final String ERROR_PREDICATE_NULL = "Argument 'predicate' must not be null";
+    private static final String ERROR_QUERY_NULL = "Argument 'query' must not be null";
     private static final String ERROR_TYPE_NULL = "Argument 'type' must not be null";
-
-    private final ThreadLocal<TestFX> testfx = new ThreadLocal<TestFX>() {
-        @Override
-        protected TestFX initialValue() {
-            return new TestFX();
-        }
-    };
-
+    private static final int SETTLE_TIMEOUT_SECONDS = 5;
+    private static final long CLOSE_WINDOW_TIMEOUT_MILLIS = 1000;
+
+    private static volatile TestFXProvider testfxProvider = TestFXProvider.perThread(TestFX::new);
+    private static volatile SelectorIndex selectorIndex;
+    private static volatile InputMode defaultInputMode = InputMode.ROBOT;
+    private static volatile boolean defaultAutoSettle;
+    private static volatile WaitStatistics waitStatistics;
+
+    private static final AtomicLong CHAIN_IDS = new AtomicLong();
+
+    private final long id = CHAIN_IDS.incrementAndGet();
+    private final ChainContext context;
+    private NodeCache cache;
+    private WeakNodes weakNodes;
+    private volatile boolean released;
     protected NodeQuery nodeQuery;
 
+    QueryChain(ChainContext context) {
+        this.context = requireNonNull(context, "Argument 'context' must not be null");
+        SoakMode.track(this);
+        ChainSession.register(this);
+    }
+
     public static QueryChain $(String query) {
-        return new StringQueryChain(query);
+        return $(CompiledQuery.of(query));
     }
 
     public static <T extends Node> QueryChain $(Matcher<T> query) {
-        return new MatcherQueryChain<>(query);
+        return $(CompiledQuery.of(query));
     }
 
     public static <T extends Node> QueryChain $(Predicate<T> query) {
-        return new PredicateQueryChain<>(query);
+        return $(CompiledQuery.of(query));
+    }
+
+    public static QueryChain $(CompiledQuery query) {
+        return create(newContext(), query);
+    }
+
+    public static QueryScope within(Window window) {
+        return QueryScope.of(window);
+    }
+
+    public static QueryScope within(Scene scene) {
+        return QueryScope.of(scene);
+    }
+
+    public static QueryScope within(Node root) {
+        return QueryScope.of(root);
+    }
+
+    public static TestFXProvider getTestFXProvider() {
+        return testfxProvider;
+    }
+
+    public static void setTestFXProvider(TestFXProvider provider) {
+        testfxProvider = requireNonNull(provider, "Argument 'provider' must not be null");
+    }
+
+    public static SelectorIndex getSelectorIndex() {
+        return selectorIndex;
+    }
+
+    public static void setSelectorIndex(SelectorIndex index) {
+        selectorIndex = index;
+    }
+
+    public static boolean isDefaultAutoSettle() {
+        return defaultAutoSettle;
+    }
+
+    public static void setDefaultAutoSettle(boolean autoSettle) {
+        defaultAutoSettle = autoSettle;
+    }
+
+    public static WaitStatistics getWaitStatistics() {
+        return waitStatistics;
+    }
+
+    /**
+     * Records the completion time of every {@code waitUntil} into {@code statistics}, and lets it
+     * shorten timeouts when it is adaptive. Pass {@code null} to stop recording.
+     */
+    public static void setWaitStatistics(WaitStatistics statistics) {
+        waitStatistics = statistics;
+    }
+
+    public static InputMode getDefaultInputMode() {
+        return defaultInputMode;
+    }
+
+    public static void setDefaultInputMode(InputMode inputMode) {
+        defaultInputMode = requireNonNull(inputMode, "Argument 'inputMode' must not be null");
+    }
+
+    /**
+     * Registers a listener that receives a {@code ChainEvent} for every chain step. Tracing is
+     * switched off, at no cost to chains, while no listener is registered.
+     */
+    public static void addChainListener(ChainListener listener) {
+        ChainTracer.addListener(listener);
+    }
+
+    public static void removeChainListener(ChainListener listener) {
+        ChainTracer.removeListener(listener);
     }
 
     protected abstract String description();
 
+    protected abstract NodeQuery lookup();
+
     public TestFX testfx() {
-        return testfx.get();
+        return context.testfx();
+    }
+
+    ChainContext context() {
+        return context;
+    }
+
+    long id() {
+        return id;
+    }
+
+    /**
+     * Returns the CSS selector this chain was created from, or {@code null} if it has none.
+     */
+    String selector() {
+        return null;
+    }
+
+    public boolean autoSettle() {
+        return context.isAutoSettle();
+    }
+
+    /**
+     * Settles after every input step of this chain and of chains created from it with {@code $$}.
+     */
+    public QueryChain autoSettle(boolean autoSettle) {
+        context.autoSettle(autoSettle);
+        return this;
+    }
+
+    public InputMode inputMode() {
+        return context.inputMode();
+    }
+
+    public QueryChain inputMode(InputMode inputMode) {
+        context.inputMode(inputMode);
+        return this;
     }
 
     public <T extends Node> T node() {
-        return nodeQuery.query();
+        ChainTracer.Trace trace = ChainTracer.begin(this, "node");
+        try {
+            T node = nodeQuery().query();
+            ChainTracer.target(node);
+            return node;
+        } finally {
+            ChainTracer.end(trace);
+        }
+    }
+
+    public QueryChain cached() {
+        if (cache == null) {
+            NodeCache nodeCache = new NodeCache();
+            NodeQuery query = nodeQuery();
+            runFx(() -> nodeCache.track(query.queryAll()));
+            cache = nodeCache;
+        }
+        return this;
+    }
+
+    public QueryChain uncached() {
+        if (cache != null) {
+            NodeCache nodeCache = cache;
+            cache = null;
+            runFx(nodeCache::invalidate);
+        }
+        return this;
+    }
+
+    /**
+     * Looks up {@code query} below the nodes of this chain only, rather than from every window.
+     */
+    public QueryChain find(String query) {
+        return find(CompiledQuery.of(query));
+    }
+
+    public <T extends Node> QueryChain find(Matcher<T> query) {
+        return find(CompiledQuery.of(query));
+    }
+
+    public <T extends Node> QueryChain find(Predicate<T> query) {
+        return find(CompiledQuery.of(query));
+    }
+
+    public <T extends Node> QueryChain find(Class<T> type, Predicate<? super T> query) {
+        return find(CompiledQuery.of(type, query));
+    }
+
+    public QueryChain find(CompiledQuery query) {
+        requireNonNull(query, ERROR_QUERY_NULL);
+        ChainTracer.Trace trace = ChainTracer.begin(this, "find");
+        try {
+            return ChainTracer.chain(trace, new CompiledQueryChain(context, query, this));
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     public QueryChain $$(String query) {
-        return new StringQueryChain(query);
+        return $$(CompiledQuery.of(query));
     }
 
     public <T extends Node> QueryChain $$(Matcher<T> query) {
-        return new MatcherQueryChain<>(query);
+        return $$(CompiledQuery.of(query));
     }
 
     public <T extends Node> QueryChain $$(Predicate<T> query) {
-        return new PredicateQueryChain<>(query);
+        return $$(CompiledQuery.of(query));
+    }
+
+    public QueryChain $$(CompiledQuery query) {
+        ChainTracer.Trace trace = ChainTracer.begin(this, "$$");
+        try {
+            return ChainTracer.chain(trace, new CompiledQueryChain(context, query));
+        } finally {
+            ChainTracer.end(trace);
+        }
+    }
+
+    /**
+     * Scrolls the virtualized control matched by this chain ({@code ListView}, {@code TableView},
+     * {@code TreeView} or {@code TreeTableView}) straight to row {@code index} and returns a chain
+     * bound to the cell showing it.
+     */
+    public QueryChain row(int index) {
+        ChainTracer.Trace trace = ChainTracer.begin(this, "row");
+        try {
+            if (trace != null) {
+                trace.arguments(index);
+            }
+            Node control = virtualControl();
+            int count = callFx(() -> VirtualCells.rowCount(control));
+            if (index < 0 || index >= count) {
+                throw new FxRobotException(description() + " has " + count + " rows, row " + index + " does not exist.");
+            }
+            return ChainTracer.chain(trace, rowChain(control, index));
+        } finally {
+            ChainTracer.end(trace);
+        }
+    }
+
+    /**
+     * Scrolls the virtualized control matched by this chain to the first row whose item (the value
+     * of the tree item, for trees) is accepted by {@code predicate} and returns a chain bound to the
+     * cell showing it.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> QueryChain item(Predicate<T> predicate) {
+        requireNonNull(predicate, ERROR_PREDICATE_NULL);
+        ChainTracer.Trace trace = ChainTracer.begin(this, "item");
+        try {
+            Node control = virtualControl();
+            int index = callFx(() -> VirtualCells.indexOf(control, item -> predicate.apply((T) item)));
+            if (index < 0) {
+                throw new FxRobotException(description() + " has no item accepted by the predicate.");
+            }
+            return ChainTracer.chain(trace, rowChain(control, index));
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     //---------------------------------------------------------------------------------------------
     // METHODS FOR SCREEN CAPTURING.
     //---------------------------------------------------------------------------------------------
 
+    /**
+     * Captures the node from the screen, or renders it offscreen when {@code HeadlessMode} is on.
+     */
     public Image capture() {
-        return testfx().capture(node());
+        ChainTracer.Trace trace = ChainTracer.begin(this, "capture");
+        try {
+            Image image = HeadlessMode.isEnabled() ? CaptureEngine.image(node()) : testfx().capture(node());
+            SoakMode.retainCapture(description(), image);
+            return image;
+        } finally {
+            ChainTracer.end(trace);
+        }
+    }
+
+    /**
+     * Snapshots the node into a baseline that later captures can be compared against.
+     */
+    public CaptureBaseline captureBaseline() {
+        ChainTracer.Trace trace = ChainTracer.begin(this, "captureBaseline");
+        try {
+            return CaptureEngine.baseline(node());
+        } finally {
+            ChainTracer.end(trace);
+        }
+    }
+
+    /**
+     * Snapshots the node and compares it against {@code baseline}, reporting only changed regions.
+     */
+    public CaptureDiff captureDiff(CaptureBaseline baseline) {
+        requireNonNull(baseline, ERROR_BASELINE_NULL);
+        ChainTracer.Trace trace = ChainTracer.begin(this, "captureDiff");
+        try {
+            return CaptureEngine.diff(node(), baseline);
+        } finally {
+            ChainTracer.end(trace);
+        }
+    }
+
+    /**
+     * Fails unless at most {@code tolerance} (0 to 1) of the node's pixels differ from {@code baseline}.
+     */
+    public QueryChain verifyCaptureMatches(CaptureBaseline baseline, double tolerance) {
+        requireNonNull(baseline, ERROR_BASELINE_NULL);
+        ChainTracer.Trace trace = ChainTracer.begin(this, "verifyCaptureMatches");
+        try {
+            CaptureDiff diff = CaptureEngine.diff(node(), baseline);
+            if (!diff.matches(tolerance)) {
+                throw new AssertionError("Expected " + description() + " to match its baseline within a tolerance of " +
+                    tolerance + ", but " + (diff.isSizeMismatch() ? "its size changed from " + baseline.getWidth() + "x" +
+                    baseline.getHeight() + " to " + diff.getWidth() + "x" + diff.getHeight() :
+                    diff.getChangedPixels() + " pixels differ in " + diff.getRegions()));
+            }
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     //---------------------------------------------------------------------------------------------
@@ -112,41 +411,169 @@ public abstract class QueryChain {
     //---------------------------------------------------------------------------------------------
 
     public QueryChain interact(Runnable runnable) {
-        waitFor(asyncFx(requireNonNull(runnable, "Argument 'runnable' must not be null")));
-        waitForFxEvents();
-        return this;
+        ChainTracer.Trace trace = ChainTracer.begin(this, "interact");
+        try {
+            runFx(requireNonNull(runnable, "Argument 'runnable' must not be null"));
+            awaitFxEvents();
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     public <T> QueryChain interact(Callable<T> callable) {
-        waitFor(asyncFx(requireNonNull(callable, "Argument 'callable' must not be null")));
-        waitForFxEvents();
-        return this;
+        ChainTracer.Trace trace = ChainTracer.begin(this, "interact");
+        try {
+            callFx(requireNonNull(callable, "Argument 'callable' must not be null"));
+            awaitFxEvents();
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     public <T extends Node, R> QueryChain interact(Class<T> type, Function<T, R> function) {
-        requireNonNull(type, ERROR_TYPE_NULL);
-        requireNonNull(function, "Argument 'function' must not be null");
-        waitFor(asyncFx(() -> function.apply(type.cast(node()))));
-        waitForFxEvents();
-        return this;
+        ChainTracer.Trace trace = ChainTracer.begin(this, "interact");
+        try {
+            requireNonNull(type, ERROR_TYPE_NULL);
+            requireNonNull(function, "Argument 'function' must not be null");
+            callFx(() -> function.apply(type.cast(node())));
+            awaitFxEvents();
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     public <T extends Node> QueryChain interact(Class<T> type, Consumer<T> consumer) {
-        requireNonNull(type, ERROR_TYPE_NULL);
-        requireNonNull(consumer, "Argument 'consumer' must not be null");
-        waitFor(asyncFx(() -> consumer.accept(type.cast(node()))));
-        waitForFxEvents();
+        ChainTracer.Trace trace = ChainTracer.begin(this, "interact");
+        try {
+            requireNonNull(type, ERROR_TYPE_NULL);
+            requireNonNull(consumer, "Argument 'consumer' must not be null");
+            runFx(() -> consumer.accept(type.cast(node())));
+            awaitFxEvents();
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
+    }
+
+    /**
+     * Resolves every node matched by this chain, once, for set-oriented operations.
+     */
+    public NodeSet all() {
+        ChainTracer.Trace trace = ChainTracer.begin(this, "all");
+        try {
+            NodeQuery query = nodeQuery();
+            ChainTracer.resolved(ChainTracer.mark(), query);
+            return new NodeSet(this, query.queryAll());
+        } finally {
+            ChainTracer.end(trace);
+        }
+    }
+
+    /**
+     * Passes every matched node to {@code consumer} in a single FX thread round trip. Failures are
+     * collected and reported together once every node has been visited.
+     */
+    public <T extends Node> QueryChain forEach(Class<T> type, Consumer<T> consumer) {
+        all().forEach(type, consumer);
         return this;
     }
 
+    /**
+     * Applies {@code function} to every matched node in a single FX thread round trip. Failures are
+     * collected and reported together once every node has been visited.
+     *
+     * @return the results, in the order the nodes were matched
+     */
+    public <T extends Node, R> List<R> interactAll(Class<T> type, Function<T, R> function) {
+        return all().interactAll(type, function);
+    }
+
+    /**
+     * Waits until the FX thread has processed pending events and the target scene has no layout
+     * pass pending, instead of sleeping for a fixed time.
+     */
+    public QueryChain settle() {
+        ChainTracer.Trace trace = ChainTracer.begin(this, "settle");
+        try {
+            WaitSupport.awaitIdle(targetScenes(), SETTLE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
+    }
+
+    /**
+     * Waits until every one of {@code animations} has stopped, then settles.
+     */
+    public QueryChain settle(Animation... animations) {
+        requireNonNull(animations, "Argument 'animations' must not be null");
+        ChainTracer.Trace trace = ChainTracer.begin(this, "settle");
+        try {
+            Observable[] statuses = new Observable[animations.length];
+            for (int i = 0; i < animations.length; i++) {
+                statuses[i] = animations[i].statusProperty();
+            }
+            WaitSupport.await("Animations did not stop within " + SETTLE_TIMEOUT_SECONDS + " seconds.", () -> {
+                for (Animation animation : animations) {
+                    if (animation.getStatus() != Animation.Status.STOPPED) {
+                        return false;
+                    }
+                }
+                return true;
+            }, SETTLE_TIMEOUT_SECONDS, TimeUnit.SECONDS, statuses);
+            WaitSupport.awaitIdle(targetScenes(), SETTLE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
+    }
+
+    public QueryBatch batch() {
+        return new QueryBatch(this);
+    }
+
+    public QueryChain batch(Consumer<QueryBatch> steps) {
+        requireNonNull(steps, "Argument 'steps' must not be null");
+        QueryBatch batch = batch();
+        steps.accept(batch);
+        return batch.commit();
+    }
+
+    /**
+     * Continues this chain without blocking; see {@code AsyncQueryChain}.
+     */
+    public AsyncQueryChain async() {
+        return new AsyncQueryChain(CompletableFuture.completedFuture(this), ForkJoinPool.commonPool());
+    }
+
     public QueryChain interrupt() {
-        waitForFxEvents();
-        return this;
+        ChainTracer.Trace trace = ChainTracer.begin(this, "interrupt");
+        try {
+            awaitFxEvents();
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
-    public QueryChain interrupt(int attemptsCount) {
-        waitForFxEvents(attemptsCount);
-        return this;
+    /**
+     * Waits until pending events have been processed and {@code pulses} pulses of the FX toolkit
+     * have finished after them.
+     */
+    public QueryChain interrupt(int pulses) {
+        ChainTracer.Trace trace = ChainTracer.begin(this, "interrupt");
+        try {
+            if (trace != null) {
+                trace.arguments(pulses);
+            }
+            awaitFxEvents(pulses);
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     //---------------------------------------------------------------------------------------------
@@ -154,32 +581,178 @@ public abstract class QueryChain {
     //---------------------------------------------------------------------------------------------
 
     public QueryChain push(KeyCode... combination) {
-        testfx().push(combination);
-        return this;
+        ChainTracer.Trace trace = ChainTracer.begin(this, "push");
+        try {
+            if (trace != null) {
+                trace.arguments((Object) combination);
+            }
+            if (context.isSynthetic()) {
+                context.syntheticInput().push(node(), combination);
+            } else {
+                testfx().push(combination);
+            }
+            afterInput();
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     public QueryChain push(KeyCodeCombination combination) {
-        testfx().push(combination);
-        return this;
+        ChainTracer.Trace trace = ChainTracer.begin(this, "push");
+        try {
+            if (trace != null) {
+                trace.arguments(combination.getName());
+            }
+            if (context.isSynthetic()) {
+                context.syntheticInput().push(node(), combination);
+            } else {
+                testfx().push(combination);
+            }
+            afterInput();
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     public QueryChain type(KeyCode... keyCodes) {
-        testfx().type(keyCodes);
-        return this;
+        ChainTracer.Trace trace = ChainTracer.begin(this, "type");
+        try {
+            if (trace != null) {
+                trace.arguments((Object) keyCodes);
+            }
+            if (context.isSynthetic()) {
+                context.syntheticInput().type(node(), 1, keyCodes);
+            } else {
+                testfx().type(keyCodes);
+            }
+            afterInput();
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     public QueryChain type(KeyCode keyCode,
                            int times) {
-        testfx().type(keyCode, times);
-        return this;
+        ChainTracer.Trace trace = ChainTracer.begin(this, "type");
+        try {
+            if (trace != null) {
+                trace.arguments(keyCode, times);
+            }
+            if (context.isSynthetic()) {
+                context.syntheticInput().type(node(), times, keyCode);
+            } else {
+                testfx().type(keyCode, times);
+            }
+            afterInput();
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     public QueryChain eraseText(int amount) {
-        return type(KeyCode.BACK_SPACE, amount);
+        ChainTracer.Trace trace = ChainTracer.begin(this, "eraseText");
+        try {
+            if (trace != null) {
+                trace.arguments(amount);
+            }
+            return type(KeyCode.BACK_SPACE, amount);
+        } finally {
+            ChainTracer.end(trace);
+        }
+    }
+
+    /**
+     * Types {@code keyCode} {@code times} times as one batch, waiting for the FX thread only once.
+     */
+    public QueryChain typeInBulk(KeyCode keyCode,
+                                 int times) {
+        ChainTracer.Trace trace = ChainTracer.begin(this, "typeInBulk");
+        try {
+            if (trace != null) {
+                trace.arguments(keyCode, times);
+            }
+            if (context.isSynthetic()) {
+                context.syntheticInput().type(node(), times, keyCode);
+            } else {
+                testfx().typeInBulk(keyCode, times);
+            }
+            afterInput();
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
+    }
+
+    public QueryChain eraseTextInBulk(int amount) {
+        ChainTracer.Trace trace = ChainTracer.begin(this, "eraseTextInBulk");
+        try {
+            if (trace != null) {
+                trace.arguments(amount);
+            }
+            return typeInBulk(KeyCode.BACK_SPACE, amount);
+        } finally {
+            ChainTracer.end(trace);
+        }
+    }
+
+    /**
+     * Empties the node, which must be a {@code TextInputControl}, without typing a key per character.
+     */
+    public QueryChain clearText() {
+        ChainTracer.Trace trace = ChainTracer.begin(this, "clearText");
+        try {
+            runFx(() -> {
+                Node node = node();
+                if (!(node instanceof TextInputControl)) {
+                    throw new FxRobotException(description() + " did not return a text input control, but " + node);
+                }
+                ((TextInputControl) node).clear();
+            });
+            awaitFxEvents();
+            afterInput();
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     public QueryChain closeCurrentWindow() {
-        return push(KeyCode.ALT, KeyCode.F4).sleep(100);
+        ChainTracer.Trace trace = ChainTracer.begin(this, "closeCurrentWindow");
+        try {
+            if (context.isSynthetic()) {
+                // synthetic key events never reach the window manager, so the window is closed directly
+                runFx(() -> {
+                    Window window = currentWindow();
+                    if (window != null) {
+                        WindowEvent closeRequest = new WindowEvent(window, WindowEvent.WINDOW_CLOSE_REQUEST);
+                        Event.fireEvent(window, closeRequest);
+                        if (!closeRequest.isConsumed()) {
+                            window.hide();
+                        }
+                    }
+                });
+                awaitFxEvents();
+                return this;
+            }
+
+            List<Window> windows = testfx().listWindows();
+            push(KeyCode.ALT, KeyCode.F4);
+            try {
+                WaitSupport.await(null, () -> !testfx().listWindows().equals(windows), CLOSE_WINDOW_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (RuntimeException e) {
+                // ALT+F4 is not the close shortcut everywhere; a window that stays open is not an error
+                if (!(e.getCause() instanceof TimeoutException)) {
+                    throw e;
+                }
+            }
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     //---------------------------------------------------------------------------------------------
@@ -187,13 +760,39 @@ public abstract class QueryChain {
     //---------------------------------------------------------------------------------------------
 
     public QueryChain write(char character) {
-        testfx().write(character);
-        return this;
+        ChainTracer.Trace trace = ChainTracer.begin(this, "write");
+        try {
+            if (trace != null) {
+                trace.arguments(String.valueOf(character));
+            }
+            if (context.isSynthetic()) {
+                context.syntheticInput().write(node(), String.valueOf(character));
+            } else {
+                testfx().write(character);
+            }
+            afterInput();
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     public QueryChain write(String text) {
-        testfx().write(text);
-        return this;
+        ChainTracer.Trace trace = ChainTracer.begin(this, "write");
+        try {
+            if (trace != null) {
+                trace.arguments(text);
+            }
+            if (context.isSynthetic()) {
+                context.syntheticInput().write(node(), text);
+            } else {
+                testfx().write(text);
+            }
+            afterInput();
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     //---------------------------------------------------------------------------------------------
@@ -201,13 +800,29 @@ public abstract class QueryChain {
     //---------------------------------------------------------------------------------------------
 
     public QueryChain sleep(long milliseconds) {
-        testfx().sleep(milliseconds);
-        return this;
+        ChainTracer.Trace trace = ChainTracer.begin(this, "sleep");
+        try {
+            if (trace != null) {
+                trace.arguments(milliseconds);
+            }
+            testfx().sleep(milliseconds);
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     public QueryChain sleep(long duration, TimeUnit timeUnit) {
-        testfx().sleep(duration, timeUnit);
-        return this;
+        ChainTracer.Trace trace = ChainTracer.begin(this, "sleep");
+        try {
+            if (trace != null) {
+                trace.arguments(timeUnit.toMillis(duration));
+            }
+            testfx().sleep(duration, timeUnit);
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     //---------------------------------------------------------------------------------------------
@@ -215,8 +830,42 @@ public abstract class QueryChain {
     //---------------------------------------------------------------------------------------------
 
     public QueryChain scroll(int amount, VerticalDirection direction) {
-        testfx().scroll(amount, direction);
-        return this;
+        ChainTracer.Trace trace = ChainTracer.begin(this, "scroll");
+        try {
+            if (trace != null) {
+                trace.arguments(amount, direction);
+            }
+            if (context.isSynthetic()) {
+                context.syntheticInput().scroll(node(), 0, direction == VerticalDirection.DOWN ? amount : -amount);
+            } else {
+                testfx().scroll(amount, direction);
+            }
+            afterInput();
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
+    }
+
+    /**
+     * Scrolls by {@code ticks} wheel notches in a single injection; positive values scroll down.
+     */
+    public QueryChain scrollBy(int ticks) {
+        ChainTracer.Trace trace = ChainTracer.begin(this, "scrollBy");
+        try {
+            if (trace != null) {
+                trace.arguments(ticks);
+            }
+            if (context.isSynthetic()) {
+                context.syntheticInput().scroll(node(), 0, ticks);
+            } else {
+                testfx().scrollBy(ticks);
+            }
+            afterInput();
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     public QueryChain scroll(VerticalDirection direction) {
@@ -225,8 +874,21 @@ public abstract class QueryChain {
     }
 
     public QueryChain scroll(int amount, HorizontalDirection direction) {
-        testfx().scroll(amount, direction);
-        return this;
+        ChainTracer.Trace trace = ChainTracer.begin(this, "scroll");
+        try {
+            if (trace != null) {
+                trace.arguments(amount, direction);
+            }
+            if (context.isSynthetic()) {
+                context.syntheticInput().scroll(node(), direction == HorizontalDirection.RIGHT ? amount : -amount, 0);
+            } else {
+                testfx().scroll(amount, direction);
+            }
+            afterInput();
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     public QueryChain scroll(HorizontalDirection direction) {
@@ -239,13 +901,39 @@ public abstract class QueryChain {
     //---------------------------------------------------------------------------------------------
 
     public QueryChain press(KeyCode... keys) {
-        testfx().press(keys);
-        return this;
+        ChainTracer.Trace trace = ChainTracer.begin(this, "press");
+        try {
+            if (trace != null) {
+                trace.arguments((Object) keys);
+            }
+            if (context.isSynthetic()) {
+                context.syntheticInput().press(node(), keys);
+            } else {
+                testfx().press(keys);
+            }
+            afterInput();
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     public QueryChain release(KeyCode... keys) {
-        testfx().release(keys);
-        return this;
+        ChainTracer.Trace trace = ChainTracer.begin(this, "release");
+        try {
+            if (trace != null) {
+                trace.arguments((Object) keys);
+            }
+            if (context.isSynthetic()) {
+                context.syntheticInput().release(node(), keys);
+            } else {
+                testfx().release(keys);
+            }
+            afterInput();
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     //---------------------------------------------------------------------------------------------
@@ -253,13 +941,39 @@ public abstract class QueryChain {
     //---------------------------------------------------------------------------------------------
 
     public QueryChain press(MouseButton... buttons) {
-        testfx().press(buttons);
-        return this;
+        ChainTracer.Trace trace = ChainTracer.begin(this, "press");
+        try {
+            if (trace != null) {
+                trace.arguments((Object) buttons);
+            }
+            if (context.isSynthetic()) {
+                context.syntheticInput().press(null, buttons);
+            } else {
+                testfx().press(buttons);
+            }
+            afterInput();
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     public QueryChain release(MouseButton... buttons) {
-        testfx().release(buttons);
-        return this;
+        ChainTracer.Trace trace = ChainTracer.begin(this, "release");
+        try {
+            if (trace != null) {
+                trace.arguments((Object) buttons);
+            }
+            if (context.isSynthetic()) {
+                context.syntheticInput().release(buttons);
+            } else {
+                testfx().release(buttons);
+            }
+            afterInput();
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     //---------------------------------------------------------------------------------------------
@@ -267,18 +981,57 @@ public abstract class QueryChain {
     //---------------------------------------------------------------------------------------------
 
     public QueryChain click(MouseButton... buttons) {
-        testfx().clickOn(pointOfVisibleNode(nodeQuery), buttons);
-        return this;
+        ChainTracer.Trace trace = ChainTracer.begin(this, "click");
+        try {
+            if (trace != null) {
+                trace.arguments((Object) buttons);
+            }
+            Node node = visibleNode();
+            if (context.isSynthetic()) {
+                context.syntheticInput().click(node, 1, buttons);
+            } else {
+                testfx().clickOn(testfx().point(node), buttons);
+            }
+            afterInput();
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     public QueryChain doubleClick(MouseButton... buttons) {
-        testfx().doubleClickOn(pointOfVisibleNode(nodeQuery), buttons);
-        return this;
+        ChainTracer.Trace trace = ChainTracer.begin(this, "doubleClick");
+        try {
+            if (trace != null) {
+                trace.arguments((Object) buttons);
+            }
+            Node node = visibleNode();
+            if (context.isSynthetic()) {
+                context.syntheticInput().click(node, 2, buttons);
+            } else {
+                testfx().doubleClickOn(testfx().point(node), buttons);
+            }
+            afterInput();
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     public QueryChain rightClick() {
-        testfx().rightClickOn(pointOfVisibleNode(nodeQuery));
-        return this;
+        ChainTracer.Trace trace = ChainTracer.begin(this, "rightClick");
+        try {
+            Node node = visibleNode();
+            if (context.isSynthetic()) {
+                context.syntheticInput().click(node, 1, MouseButton.SECONDARY);
+            } else {
+                testfx().rightClickOn(testfx().point(node));
+            }
+            afterInput();
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     //---------------------------------------------------------------------------------------------
@@ -286,23 +1039,76 @@ public abstract class QueryChain {
     //---------------------------------------------------------------------------------------------
 
     public QueryChain drag(MouseButton... buttons) {
-        testfx().drag(pointOfVisibleNode(nodeQuery), buttons);
-        return this;
+        ChainTracer.Trace trace = ChainTracer.begin(this, "drag");
+        try {
+            if (trace != null) {
+                trace.arguments((Object) buttons);
+            }
+            Node node = visibleNode();
+            if (context.isSynthetic()) {
+                context.syntheticInput().press(node, buttons);
+            } else {
+                testfx().drag(testfx().point(node), buttons);
+            }
+            afterInput();
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     public QueryChain drop() {
-        testfx().drop();
-        return this;
+        ChainTracer.Trace trace = ChainTracer.begin(this, "drop");
+        try {
+            if (context.isSynthetic()) {
+                context.syntheticInput().release();
+            } else {
+                testfx().drop();
+            }
+            afterInput();
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     public QueryChain dropTo(PointQuery pointQuery) {
-        testfx().dropTo(pointQuery);
-        return this;
+        ChainTracer.Trace trace = ChainTracer.begin(this, "dropTo");
+        try {
+            Point2D point = context.isSynthetic() || trace != null ? pointQuery.query() : null;
+            if (trace != null) {
+                trace.arguments(point);
+            }
+            if (context.isSynthetic()) {
+                context.syntheticInput().moveTo(point);
+                context.syntheticInput().release();
+            } else {
+                testfx().dropTo(pointQuery);
+            }
+            afterInput();
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     public QueryChain dropBy(double x, double y) {
-        testfx().dropBy(x, y);
-        return this;
+        ChainTracer.Trace trace = ChainTracer.begin(this, "dropBy");
+        try {
+            if (trace != null) {
+                trace.arguments(x, y);
+            }
+            if (context.isSynthetic()) {
+                context.syntheticInput().moveBy(x, y);
+                context.syntheticInput().release();
+            } else {
+                testfx().dropBy(x, y);
+            }
+            afterInput();
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     public QueryChain dropTo(double x, double y) {
@@ -318,7 +1124,19 @@ public abstract class QueryChain {
     }
 
     public QueryChain dropTo(Node node) {
-        return dropTo(testfx().point(node));
+        ChainTracer.Trace trace = ChainTracer.begin(this, "dropTo");
+        try {
+            ChainTracer.target(node);
+            if (context.isSynthetic()) {
+                context.syntheticInput().moveTo(node);
+                context.syntheticInput().release();
+                afterInput();
+                return this;
+            }
+            return dropTo(testfx().point(node));
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     public QueryChain dropTo(Scene scene) {
@@ -330,15 +1148,25 @@ public abstract class QueryChain {
     }
 
     public QueryChain dropTo(String query) {
-        return dropTo(pointOfVisibleNode(query));
+        return dropTo(CompiledQuery.of(query));
     }
 
     public <T extends Node> QueryChain dropTo(Matcher<T> matcher) {
-        return dropTo(pointOfVisibleNode(requireNonNull(matcher, ERROR_MATCHER_NULL)));
+        return dropTo(CompiledQuery.of(matcher));
     }
 
     public <T extends Node> QueryChain dropTo(Predicate<T> predicate) {
-        return dropTo(pointOfVisibleNode(requireNonNull(predicate, ERROR_PREDICATE_NULL)));
+        return dropTo(CompiledQuery.of(predicate));
+    }
+
+    public QueryChain dropTo(CompiledQuery query) {
+        requireNonNull(query, ERROR_QUERY_NULL);
+        ChainTracer.Trace trace = ChainTracer.begin(this, "dropTo");
+        try {
+            return dropTo(visibleNode(query));
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     //---------------------------------------------------------------------------------------------
@@ -346,14 +1174,41 @@ public abstract class QueryChain {
     //---------------------------------------------------------------------------------------------
 
     public QueryChain moveTo(PointQuery pointQuery) {
-        testfx().moveTo(pointQuery);
-        return this;
+        ChainTracer.Trace trace = ChainTracer.begin(this, "moveTo");
+        try {
+            Point2D point = context.isSynthetic() || trace != null ? pointQuery.query() : null;
+            if (trace != null) {
+                trace.arguments(point);
+            }
+            if (context.isSynthetic()) {
+                context.syntheticInput().moveTo(point);
+            } else {
+                testfx().moveTo(pointQuery);
+            }
+            afterInput();
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     public QueryChain moveBy(double x,
                              double y) {
-        testfx().moveBy(x, y);
-        return this;
+        ChainTracer.Trace trace = ChainTracer.begin(this, "moveBy");
+        try {
+            if (trace != null) {
+                trace.arguments(x, y);
+            }
+            if (context.isSynthetic()) {
+                context.syntheticInput().moveBy(x, y);
+            } else {
+                testfx().moveBy(x, y);
+            }
+            afterInput();
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     public QueryChain moveTo(double x,
@@ -370,7 +1225,18 @@ public abstract class QueryChain {
     }
 
     public QueryChain moveTo(Node node) {
-        return moveTo(testfx().point(node));
+        ChainTracer.Trace trace = ChainTracer.begin(this, "moveTo");
+        try {
+            ChainTracer.target(node);
+            if (context.isSynthetic()) {
+                context.syntheticInput().moveTo(node);
+                afterInput();
+                return this;
+            }
+            return moveTo(testfx().point(node));
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     public QueryChain moveTo(Scene scene) {
@@ -382,15 +1248,25 @@ public abstract class QueryChain {
     }
 
     public QueryChain moveTo(String query) {
-        return moveTo(pointOfVisibleNode(query));
+        return moveTo(CompiledQuery.of(query));
     }
 
     public <T extends Node> QueryChain moveTo(Matcher<T> matcher) {
-        return moveTo(pointOfVisibleNode(requireNonNull(matcher, ERROR_MATCHER_NULL)));
+        return moveTo(CompiledQuery.of(matcher));
     }
 
     public <T extends Node> QueryChain moveTo(Predicate<T> predicate) {
-        return moveTo(pointOfVisibleNode(requireNonNull(predicate, ERROR_PREDICATE_NULL)));
+        return moveTo(CompiledQuery.of(predicate));
+    }
+
+    public QueryChain moveTo(CompiledQuery query) {
+        requireNonNull(query, ERROR_QUERY_NULL);
+        ChainTracer.Trace trace = ChainTracer.begin(this, "moveTo");
+        try {
+            return moveTo(visibleNode(query));
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     //---------------------------------------------------------------------------------------------
@@ -399,88 +1275,205 @@ public abstract class QueryChain {
 
     public <T extends Node> QueryChain waitUntil(final Predicate<T> condition,
                                                  int timeoutInSeconds) {
-        requireNonNull(condition, ERROR_CONDITION_NULL);
-        awaitCondition(() -> condition.apply(node()), timeoutInSeconds);
-        return this;
+        return waitUntil(null, condition, Duration.ofSeconds(timeoutInSeconds));
     }
 
     public <T extends Node> QueryChain waitUntil(final String message,
                                                  final Predicate<T> condition,
                                                  int timeoutInSeconds) {
-        requireNonNull(condition, ERROR_CONDITION_NULL);
-        awaitCondition(message, () -> condition.apply(node()), timeoutInSeconds);
-        return this;
+        return waitUntil(message, condition, Duration.ofSeconds(timeoutInSeconds));
     }
 
     public <T extends Node> QueryChain waitUntil(final Matcher<T> condition,
                                                  int timeoutInSeconds) {
+        return waitUntil(null, condition, Duration.ofSeconds(timeoutInSeconds));
+    }
+
+    public <T extends Node> QueryChain waitUntil(final String message,
+                                                 final Matcher<T> condition,
+                                                 int timeoutInSeconds) {
+        return waitUntil(message, condition, Duration.ofSeconds(timeoutInSeconds));
+    }
+
+    public <T extends Node> QueryChain waitUntil(final Predicate<T> condition,
+                                                 int timeoutInSeconds,
+                                                 Observable... dependencies) {
+        return waitUntil(null, condition, Duration.ofSeconds(timeoutInSeconds), dependencies);
+    }
+
+    public <T extends Node> QueryChain waitUntil(final String message,
+                                                 final Predicate<T> condition,
+                                                 int timeoutInSeconds,
+                                                 Observable... dependencies) {
+        return waitUntil(message, condition, Duration.ofSeconds(timeoutInSeconds), dependencies);
+    }
+
+    public <T extends Node> QueryChain waitUntil(final Matcher<T> condition,
+                                                 int timeoutInSeconds,
+                                                 Observable... dependencies) {
+        return waitUntil(null, condition, Duration.ofSeconds(timeoutInSeconds), dependencies);
+    }
+
+    public <T extends Node> QueryChain waitUntil(final String message,
+                                                 final Matcher<T> condition,
+                                                 int timeoutInSeconds,
+                                                 Observable... dependencies) {
+        return waitUntil(message, condition, Duration.ofSeconds(timeoutInSeconds), dependencies);
+    }
+
+    public <T extends Node> QueryChain waitUntil(Class<T> type,
+                                                 Function<T, ObservableBooleanValue> condition,
+                                                 int timeoutInSeconds) {
+        return waitUntil(null, type, condition, Duration.ofSeconds(timeoutInSeconds));
+    }
+
+    public <T extends Node> QueryChain waitUntil(final String message,
+                                                 Class<T> type,
+                                                 Function<T, ObservableBooleanValue> condition,
+                                                 int timeoutInSeconds) {
+        return waitUntil(message, type, condition, Duration.ofSeconds(timeoutInSeconds));
+    }
+
+    public <T extends Node> QueryChain waitUntil(final Predicate<T> condition,
+                                                 Duration timeout,
+                                                 Observable... dependencies) {
+        return waitUntil(null, condition, timeout, dependencies);
+    }
+
+    public <T extends Node> QueryChain waitUntil(final String message,
+                                                 final Predicate<T> condition,
+                                                 Duration timeout,
+                                                 Observable... dependencies) {
         requireNonNull(condition, ERROR_CONDITION_NULL);
-        awaitCondition(() -> condition.matches(node()), timeoutInSeconds);
+        awaitCondition(message, "predicate", () -> condition.apply(node()), timeout, dependencies);
         return this;
     }
 
+    public <T extends Node> QueryChain waitUntil(final Matcher<T> condition,
+                                                 Duration timeout,
+                                                 Observable... dependencies) {
+        return waitUntil(null, condition, timeout, dependencies);
+    }
+
     public <T extends Node> QueryChain waitUntil(final String message,
                                                  final Matcher<T> condition,
-                                                 int timeoutInSeconds) {
+                                                 Duration timeout,
+                                                 Observable... dependencies) {
         requireNonNull(condition, ERROR_CONDITION_NULL);
-        awaitCondition(message, () -> condition.matches(node()), timeoutInSeconds);
+        awaitCondition(message, condition.toString(), () -> condition.matches(node()), timeout, dependencies);
         return this;
     }
 
+    public <T extends Node> QueryChain waitUntil(Class<T> type,
+                                                 Function<T, ObservableBooleanValue> condition,
+                                                 Duration timeout) {
+        return waitUntil(null, type, condition, timeout);
+    }
+
+    public <T extends Node> QueryChain waitUntil(final String message,
+                                                 Class<T> type,
+                                                 Function<T, ObservableBooleanValue> condition,
+                                                 Duration timeout) {
+        requireNonNull(type, ERROR_TYPE_NULL);
+        requireNonNull(condition, ERROR_CONDITION_NULL);
+        ChainTracer.Trace trace = ChainTracer.begin(this, "waitUntil");
+        try {
+            ObservableBooleanValue value = callFx(() -> condition.apply(type.cast(node())));
+            awaitCondition(message, "condition on " + type.getSimpleName(), value::get, timeout, value);
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
+    }
+
     //---------------------------------------------------------------------------------------------
     // METHODS FOR VERIFYING STATE.
     //---------------------------------------------------------------------------------------------
 
     public <T extends Node> QueryChain verifyThat(Matcher<T> matcher) {
-        FxAssert.verifyThat(nodeQuery, requireNonNull(matcher, ERROR_MATCHER_NULL));
-        return this;
+        ChainTracer.Trace trace = ChainTracer.begin(this, "verifyThat");
+        try {
+            FxAssert.verifyThat(nodeQuery(), requireNonNull(matcher, ERROR_MATCHER_NULL));
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     public <T extends Node> QueryChain verifyThat(Predicate<T> predicate) {
-        FxAssert.verifyThat(nodeQuery, requireNonNull(predicate, ERROR_PREDICATE_NULL));
-        return this;
+        ChainTracer.Trace trace = ChainTracer.begin(this, "verifyThat");
+        try {
+            FxAssert.verifyThat(nodeQuery(), requireNonNull(predicate, ERROR_PREDICATE_NULL));
+            return this;
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
     //---------------------------------------------------------------------------------------------
     // PRIVATE MEMBERS.
     //---------------------------------------------------------------------------------------------
 
-    private static class StringQueryChain extends QueryChain {
-        private final String query;
+    private static class CompiledQueryChain extends QueryChain {
+        private final CompiledQuery query;
+        private final QueryChain parent;
+
+        public CompiledQueryChain(ChainContext context, CompiledQuery query) {
+            this(context, query, null);
+        }
 
-        public StringQueryChain(String query) {
-            this.query = query;
-            this.nodeQuery = testfx().lookup(query);
+        /**
+         * Creates a chain whose lookups only search below the nodes of {@code parent}, when given.
+         */
+        public CompiledQueryChain(ChainContext context, CompiledQuery query, QueryChain parent) {
+            super(context);
+            this.query = requireNonNull(query, ERROR_QUERY_NULL);
+            this.parent = parent;
+            retain(resolve());
         }
 
         @Override
         protected String description() {
-            return "the query \"" + query + "\"";
+            return parent != null ? query.getDescription() + " below " + parent.description() : query.getDescription();
         }
-    }
-
-    private static class MatcherQueryChain<T extends Node> extends QueryChain {
-        private final Matcher<T> matcher;
 
-        public MatcherQueryChain(Matcher<T> matcher) {
-            this.matcher = requireNonNull(matcher, ERROR_MATCHER_NULL);
-            this.nodeQuery = testfx().lookup(matcher);
+        @Override
+        String selector() {
+            // a scoped selector means something else when replayed from the roots
+            return parent != null || context().scope() != null ? null : query.getSelector();
         }
 
         @Override
-        protected String description() {
-            return "the matcher \"" + matcher.toString() + "\"";
+        protected NodeQuery lookup() {
+            if (parent != null) {
+                return context().testfx().from(QueryPlanner.lookupAll(query, parent.nodeQuery().queryAll()));
+            }
+            return query.lookup(context());
         }
     }
 
-    private static class PredicateQueryChain<T extends Node> extends QueryChain {
-        public PredicateQueryChain(Predicate<T> predicate) {
-            this.nodeQuery = testfx().lookup(requireNonNull(predicate, ERROR_PREDICATE_NULL));
+    /**
+     * A chain bound to a single node found by an earlier step, such as the cell showing a row.
+     */
+    private static class NodeChain extends QueryChain {
+        private final Node node;
+        private final String description;
+
+        public NodeChain(ChainContext context, Node node, String description) {
+            super(context);
+            this.node = node;
+            this.description = description;
+            retain(resolve());
         }
 
         @Override
         protected String description() {
-            return "the predicate";
+            return description;
+        }
+
+        @Override
+        protected NodeQuery lookup() {
+            return context().testfx().from(node);
         }
     }
 
@@ -488,54 +1481,208 @@ public abstract class QueryChain {
     // PRIVATE METHODS.
     //---------------------------------------------------------------------------------------------
 
-    private PointQuery pointOfVisibleNode(NodeQuery nodeQuery) {
-        Node node = queryVisibleNode(nodeQuery, description());
-        return testfx().point(node);
+    private NodeQuery nodeQuery() {
+        if (released) {
+            throw new IllegalStateException(description() + " belongs to a closed ChainSession.");
+        }
+        NodeCache nodeCache = cache;
+        if (nodeCache != null && !nodeCache.isValid()) {
+            retain(callFx(() -> {
+                NodeQuery query = resolve();
+                nodeCache.track(query.queryAll());
+                return query;
+            }));
+        }
+        WeakNodes nodes = weakNodes;
+        if (nodes != null) {
+            Set<Node> live = nodes.get();
+            if (live == null) {
+                NodeQuery query = callFx(this::resolve);
+                retain(query);
+                return query;
+            }
+            return testfx().from(live);
+        }
+        return nodeQuery;
+    }
+
+    /**
+     * Keeps the nodes of {@code query} for later steps, through weak references in soak mode.
+     */
+    final void retain(NodeQuery query) {
+        if (SoakMode.isEnabled()) {
+            weakNodes = new WeakNodes(query.queryAll());
+            nodeQuery = null;
+        } else {
+            weakNodes = null;
+            nodeQuery = query;
+        }
+    }
+
+    /**
+     * Drops every reference this chain holds into the scene graph; called when its
+     * {@code ChainSession} closes.
+     */
+    void release() {
+        released = true;
+        uncached();
+        weakNodes = null;
+        nodeQuery = null;
+        context.release();
     }
 
-    private PointQuery pointOfVisibleNode(String query) {
-        NodeQuery nodeQuery = testfx().lookup(query);
-        Node node = queryVisibleNode(nodeQuery, "the query \"" + query + "\"");
-        return testfx().point(node);
+    static ChainContext newContext() {
+        return new ChainContext(testfxProvider.acquire(), defaultInputMode, defaultAutoSettle);
     }
 
-    private <T extends Node> PointQuery pointOfVisibleNode(Matcher<T> matcher) {
-        NodeQuery nodeQuery = testfx().lookup(matcher);
-        Node node = queryVisibleNode(nodeQuery, "the matcher \"" + matcher.toString() + "\"");
-        return testfx().point(node);
+    private void afterInput() {
+        // settling waits for the FX thread, so it is skipped for steps running on it
+        if (context.isAutoSettle() && !Platform.isFxApplicationThread()) {
+            WaitSupport.awaitIdle(targetScenes(), SETTLE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Returns the scene of the chain's node, or the scenes of all windows when it has none.
+     */
+    private List<Scene> targetScenes() {
+        return callFx(() -> {
+            List<Scene> scenes = new ArrayList<>();
+            Node node = nodeQuery().tryQuery().orNull();
+            if (node != null && node.getScene() != null) {
+                scenes.add(node.getScene());
+            } else {
+                for (Window window : testfx().listWindows()) {
+                    if (window.getScene() != null) {
+                        scenes.add(window.getScene());
+                    }
+                }
+            }
+            return scenes;
+        });
+    }
+
+    private Node virtualControl() {
+        Node control = node();
+        if (!VirtualCells.supports(control)) {
+            throw new FxRobotException(description() + " did not return a ListView, TableView, TreeView or TreeTableView, but " + control);
+        }
+        return control;
+    }
+
+    /**
+     * Brings row {@code index} of {@code control} into view and binds a chain to its cell. Scrolling
+     * and the layout pass run in one round trip; the scene is only settled when the control had no
+     * cells to show yet.
+     */
+    private QueryChain rowChain(Node control, int index) {
+        Node cell = callFx(() -> VirtualCells.materialize(control, index));
+        if (cell == null) {
+            WaitSupport.awaitIdle(targetScenes(), SETTLE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            cell = callFx(() -> VirtualCells.cell(control, index));
+        }
+        if (cell == null) {
+            throw new FxRobotException(description() + " did not show a cell for row " + index + ".");
+        }
+        ChainTracer.target(cell);
+        return new NodeChain(context, cell, description() + " row " + index);
+    }
+
+    /**
+     * Returns the focused window, or the last opened one when none has focus.
+     */
+    private Window currentWindow() {
+        List<Window> windows = testfx().listWindows();
+        for (Window window : windows) {
+            if (window.isFocused()) {
+                return window;
+            }
+        }
+        return windows.isEmpty() ? null : windows.get(windows.size() - 1);
     }
 
-    private <T extends Node> PointQuery pointOfVisibleNode(Predicate<T> predicate) {
-        NodeQuery nodeQuery = testfx().lookup(predicate);
-        Node node = queryVisibleNode(nodeQuery, "the predicate");
-        return testfx().point(node);
+    /**
+     * Starts a chain in {@code context}, traced as a {@code $} step so recorded sessions see where
+     * scoped chains begin too.
+     */
+    static QueryChain create(ChainContext context, CompiledQuery query) {
+        ChainTracer.Trace trace = ChainTracer.begin(null, "$");
+        try {
+            return ChainTracer.chain(trace, new CompiledQueryChain(context, query));
+        } finally {
+            ChainTracer.end(trace);
+        }
     }
 
-    private Node queryVisibleNode(NodeQuery nodeQuery,
-                                  String queryDescription) {
-        Set<Node> resultNodes = nodeQuery.queryAll();
-        if (resultNodes.isEmpty()) {
-            String message = queryDescription + " returned no nodes.";
-            throw new FxRobotException(message);
+    Node visibleNode() {
+        NodeQuery query = nodeQuery();
+        long mark = ChainTracer.mark();
+        Node node = VisibleNodes.first(query.queryAll());
+        ChainTracer.resolved(mark, query);
+        ChainTracer.target(node);
+        if (node == null) {
+            throw noVisibleNode(query, description());
         }
-        Optional<Node> resultNode = testfx().from(resultNodes).match(isVisible()).tryQuery();
-        if (!resultNode.isPresent()) {
-            String message = queryDescription + " returned " + resultNodes.size() + " nodes" +
-                ", but no nodes were visible.";
-            throw new FxRobotException(message);
+        return node;
+    }
+
+    /**
+     * Runs {@code lookup()}, recording its time and match count for the current traced step.
+     */
+    final NodeQuery resolve() {
+        long mark = ChainTracer.mark();
+        NodeQuery query = lookup();
+        ChainTracer.resolved(mark, query);
+        return query;
+    }
+
+    private Node visibleNode(CompiledQuery query) {
+        long mark = ChainTracer.mark();
+        Node node = query.firstVisible(context);
+        ChainTracer.resolved(mark, node != null ? 1 : 0);
+        ChainTracer.target(node);
+        if (node == null) {
+            throw noVisibleNode(query.lookup(context), query.getDescription());
         }
-        return resultNode.get();
+        return node;
     }
 
-    private void awaitCondition(Callable<Boolean> condition, int timeoutInSeconds) {
-        awaitCondition(null, condition, timeoutInSeconds);
+    private static FxRobotException noVisibleNode(NodeQuery nodeQuery,
+                                                  String queryDescription) {
+        int matches = nodeQuery.queryAll().size();
+        if (matches == 0) {
+            return new FxRobotException(queryDescription + " returned no nodes.");
+        }
+        return new FxRobotException(queryDescription + " returned " + matches + " nodes" +
+            ", but no nodes were visible.");
     }
 
-    private void awaitCondition(String message, Callable<Boolean> condition, int timeoutInSeconds) {
+    /**
+     * Waits for {@code condition}, shortening {@code timeout} when adaptive wait statistics know
+     * how long it usually takes, and records how long it took.
+     */
+    private void awaitCondition(String message, String conditionDescription, Callable<Boolean> condition, Duration timeout, Observable... dependencies) {
+        requireNonNull(timeout, "Argument 'timeout' must not be null");
+        ChainTracer.Trace trace = ChainTracer.begin(this, "waitUntil");
         try {
-            WaitForAsyncUtils.waitFor(timeoutInSeconds, TimeUnit.SECONDS, condition);
-        } catch (Exception exception) {
-            throw new RuntimeException(message, exception);
+            WaitStatistics statistics = waitStatistics;
+            if (statistics == null) {
+                WaitSupport.await(message, condition, timeout.toNanos(), TimeUnit.NANOSECONDS, dependencies);
+                return;
+            }
+
+            String key = description() + " :: " + (message != null ? message : conditionDescription);
+            Duration effective = statistics.timeoutFor(key, timeout);
+            if (effective.compareTo(timeout) < 0) {
+                message = (message != null ? message + ". " : "") + "Gave up after " + effective.toMillis() +
+                    " ms, well past the usual 99th percentile of " + statistics.percentile(key, 99).toMillis() +
+                    " ms (timeout was " + timeout.toMillis() + " ms)";
+            }
+            long start = System.nanoTime();
+            WaitSupport.await(message, condition, effective.toNanos(), TimeUnit.NANOSECONDS, dependencies);
+            statistics.record(key, System.nanoTime() - start);
+        } finally {
+            ChainTracer.end(trace);
         }
     }
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import com.google.common.base.Predicate;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import org.testfx.util.NodeQueryUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Plans lookups below a set of resolved nodes, so a scoped lookup costs the size of the subtree
+ * rather than the size of the whole application.
+ * <ul>
+ * <li>Queries that can be tested node by node (plain {@code #id} and {@code .class} selectors,
+ * typed matchers and predicates) are evaluated during a single walk of the subtree, with the
+ * cheap type or id check ahead of the matcher or predicate.</li>
+ * <li>Descendant selectors led by an id, such as {@code "#form .button"}, first find the id
+ * anchors and only run the rest of the selector below them.</li>
+ * <li>Strings that start with neither {@code #} nor {@code .} are text, as they are for
+ * {@code $} and {@code $$}, and are matched with TestFX's {@code hasText} during the same walk.</li>
+ * <li>Any other selector is handed to {@code Node.lookupAll} on each root.</li>
+ * </ul>
+ * The roots themselves are never matched. Steps that need a visible node pick it from the result
+ * as usual.
+ *
+ * @author Andres Almiray
+ */
+final class QueryPlanner {
+    private QueryPlanner() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns every node below {@code roots} matching {@code query}.
+     */
+    static Set<Node> lookupAll(CompiledQuery query, Collection<? extends Node> roots) {
+        Predicate<Node> filter = query.filter();
+        if (filter != null) {
+            return collect(children(roots), filter);
+        }
+
+        if (!isCssSelector(query.getSelector())) {
+            return collect(children(roots), NodeQueryUtils.hasText(query.getSelector()));
+        }
+
+        String selector = query.getSelector().trim();
+        int split = anchorSplit(selector);
+        if (split > 0) {
+            Predicate<Node> anchorFilter = VisibleNodes.selectorFilter(selector.substring(0, split));
+            String rest = selector.substring(split).trim();
+            return lookupBelow(collect(children(roots), anchorFilter), rest);
+        }
+        return lookupBelow(roots, selector);
+    }
+
+    /**
+     * Mirrors the rule TestFX applies to {@code NodeQuery.lookup(String)}: anything else is text.
+     */
+    private static boolean isCssSelector(String selector) {
+        return selector.startsWith("#") || selector.startsWith(".");
+    }
+
+    /**
+     * Returns the length of the leading {@code #id} of a descendant selector, or 0 when the
+     * selector does not start with an id followed by a plain descendant combinator.
+     */
+    private static int anchorSplit(String selector) {
+        if (selector.indexOf('>') >= 0 || selector.indexOf(',') >= 0) {
+            return 0;
+        }
+        int space = selector.indexOf(' ');
+        if (space <= 0 || !selector.startsWith("#") || !SelectorIndex.supports(selector.substring(0, space))) {
+            return 0;
+        }
+        return space;
+    }
+
+    private static Set<Node> lookupBelow(Collection<? extends Node> roots, String selector) {
+        Set<Node> nodes = new LinkedHashSet<>();
+        for (Node root : roots) {
+            for (Node node : root.lookupAll(selector)) {
+                if (node != root) {
+                    nodes.add(node);
+                }
+            }
+        }
+        return nodes;
+    }
+
+    private static List<Node> children(Collection<? extends Node> roots) {
+        List<Node> children = new ArrayList<>();
+        for (Node root : roots) {
+            if (root instanceof Parent) {
+                children.addAll(((Parent) root).getChildrenUnmodifiable());
+            }
+        }
+        return children;
+    }
+
+    private static Set<Node> collect(Collection<? extends Node> roots, Predicate<Node> filter) {
+        Set<Node> nodes = new LinkedHashSet<>();
+        Deque<Node> pending = new ArrayDeque<>();
+        for (Node root : roots) {
+            pending.push(root);
+            while (!pending.isEmpty()) {
+                Node node = pending.pop();
+                if (filter.apply(node)) {
+                    nodes.add(node);
+                }
+                if (node instanceof Parent) {
+                    List<Node> children = ((Parent) node).getChildrenUnmodifiable();
+                    for (int i = children.size() - 1; i >= 0; i--) {
+                        pending.push(children.get(i));
+                    }
+                }
+            }
+        }
+        return nodes;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import com.google.common.base.Predicate;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.stage.PopupWindow;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+import org.hamcrest.Matcher;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Binds chains to a single window, scene or node. Lookups only search below that root (and the
+ * popups and dialogs owned by a scoped window), so independent applications can be driven from
+ * separate threads in the same JVM without seeing each other's nodes.
+ *
+ * @author Andres Almiray
+ */
+public final class QueryScope {
+    private final Window window;
+    private final Scene scene;
+    private final Node node;
+
+    private QueryScope(Window window, Scene scene, Node node) {
+        this.window = window;
+        this.scene = scene;
+        this.node = node;
+    }
+
+    public static QueryScope of(Window window) {
+        return new QueryScope(requireNonNull(window, "Argument 'window' must not be null"), null, null);
+    }
+
+    public static QueryScope of(Scene scene) {
+        return new QueryScope(null, requireNonNull(scene, "Argument 'scene' must not be null"), null);
+    }
+
+    public static QueryScope of(Node node) {
+        return new QueryScope(null, null, requireNonNull(node, "Argument 'node' must not be null"));
+    }
+
+    public QueryChain $(String query) {
+        return $(CompiledQuery.of(query));
+    }
+
+    public <T extends Node> QueryChain $(Matcher<T> query) {
+        return $(CompiledQuery.of(query));
+    }
+
+    public <T extends Node> QueryChain $(Predicate<T> query) {
+        return $(CompiledQuery.of(query));
+    }
+
+    public QueryChain $(CompiledQuery query) {
+        return QueryChain.create(newContext(), query);
+    }
+
+    /**
+     * Returns the roots lookups start from, evaluated at the time of the call.
+     */
+    Set<Node> roots(TestFX testfx) {
+        if (node != null) {
+            return Collections.singleton(node);
+        }
+        if (scene != null) {
+            return rootOf(scene);
+        }
+
+        Set<Node> roots = new LinkedHashSet<>(rootOf(window.getScene()));
+        for (Window candidate : testfx.listWindows()) {
+            if (candidate != window && isOwnedBy(candidate, window)) {
+                roots.addAll(rootOf(candidate.getScene()));
+            }
+        }
+        return roots;
+    }
+
+    private ChainContext newContext() {
+        return QueryChain.newContext().scope(this);
+    }
+
+    private static Set<Node> rootOf(Scene scene) {
+        return scene != null && scene.getRoot() != null ? Collections.singleton(scene.getRoot()) : Collections.emptySet();
+    }
+
+    private static boolean isOwnedBy(Window candidate, Window owner) {
+        for (Window current = ownerOf(candidate); current != null; current = ownerOf(current)) {
+            if (current == owner) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Window ownerOf(Window window) {
+        if (window instanceof PopupWindow) {
+            return ((PopupWindow) window).getOwnerWindow();
+        }
+        if (window instanceof Stage) {
+            return ((Stage) window).getOwner();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A single step read back from a session log written by {@code SessionRecorder}.
+ *
+ * @author Andres Almiray
+ */
+public final class RecordedStep {
+    private final long timestamp;
+    private final long durationNanos;
+    private final long chainId;
+    private final String step;
+    private final String description;
+    private final String selector;
+    private final String nodePath;
+    private final List<Object> arguments;
+
+    RecordedStep(long timestamp, long durationNanos, long chainId, String step, String description,
+                 String selector, String nodePath, List<Object> arguments) {
+        this.timestamp = timestamp;
+        this.durationNanos = durationNanos;
+        this.chainId = chainId;
+        this.step = step;
+        this.description = description;
+        this.selector = selector;
+        this.nodePath = nodePath;
+        this.arguments = Collections.unmodifiableList(arguments);
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public long getChainId() {
+        return chainId;
+    }
+
+    public String getStep() {
+        return step;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getSelector() {
+        return selector;
+    }
+
+    /**
+     * Position of the node the step acted on below its scene root, such as {@code VBox/1:HBox/0:Button}.
+     */
+    public String getNodePath() {
+        return nodePath;
+    }
+
+    public List<Object> getArguments() {
+        return arguments;
+    }
+
+    @Override
+    public String toString() {
+        return "RecordedStep[chain=" + chainId + ", step=" + step + ", description=" + description +
+            ", node=" + nodePath + ", arguments=" + arguments + "]";
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+/**
+ * The outcome of one scenario run by a {@code ShardedRunner}.
+ *
+ * @author Andres Almiray
+ */
+public final class ScenarioResult {
+    private final String scenario;
+    private final int fork;
+    private final boolean passed;
+    private final long durationNanos;
+    private final String failure;
+
+    ScenarioResult(String scenario, int fork, boolean passed, long durationNanos, String failure) {
+        this.scenario = scenario;
+        this.fork = fork;
+        this.passed = passed;
+        this.durationNanos = durationNanos;
+        this.failure = failure;
+    }
+
+    public String getScenario() {
+        return scenario;
+    }
+
+    /**
+     * Returns the index of the forked JVM that ran the scenario, or -1 if no fork ran it.
+     */
+    public int getFork() {
+        return fork;
+    }
+
+    public boolean isPassed() {
+        return passed;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * Returns the failure reported for the scenario, or {@code null} if it passed.
+     */
+    public String getFailure() {
+        return failure;
+    }
+
+    @Override
+    public String toString() {
+        return scenario + (passed ? " passed" : " failed: " + failure) + " in " + (durationNanos / 1_000_000) + " ms";
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import javafx.beans.property.ReadOnlyProperty;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.collections.ListChangeListener;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.regex.Pattern;
+
+import static java.util.Objects.requireNonNull;
+import static org.kordamp.testfx.FxThreadUtils.runFx;
+
+/**
+ * Indexes nodes by id and style class so that simple {@code #id} and {@code .class} selectors can be
+ * resolved without traversing the scene graph.
+ * <p>
+ * Roots are indexed the first time they are searched. From then on the index is kept up to date by
+ * listeners on children lists, {@code idProperty()} and {@code getStyleClass()}. Nodes are held
+ * through weak references only.
+ *
+ * @author Andres Almiray
+ */
+public final class SelectorIndex {
+    private static final Pattern ID_SELECTOR = Pattern.compile("#[_a-zA-Z][\\w-]*");
+    private static final Pattern STYLE_CLASS_SELECTOR = Pattern.compile("\\.[_a-zA-Z][\\w-]*");
+
+    private final Map<String, Set<Node>> nodesById = new HashMap<>();
+    private final Map<String, Set<Node>> nodesByStyleClass = new HashMap<>();
+    private final Map<Node, NodeListeners> indexedNodes = new WeakHashMap<>();
+    private final Set<Node> indexedRoots = Collections.newSetFromMap(new WeakHashMap<>());
+    private final ChangeListener<String> idListener = this::idChanged;
+
+    public static boolean supports(String selector) {
+        return selector != null &&
+            (ID_SELECTOR.matcher(selector).matches() || STYLE_CLASS_SELECTOR.matcher(selector).matches());
+    }
+
+    /**
+     * Returns all nodes matching {@code selector} found at or below any of the given roots.
+     */
+    public Set<Node> lookup(String selector, Collection<Node> roots) {
+        if (!supports(selector)) {
+            throw new IllegalArgumentException("Selector '" + selector + "' can not be resolved by an index");
+        }
+        requireNonNull(roots, "Argument 'roots' must not be null");
+
+        for (Node root : roots) {
+            if (!isIndexedRoot(root)) {
+                runFx(() -> indexRoot(root));
+            }
+        }
+
+        String key = selector.substring(1);
+        Set<Node> result = new LinkedHashSet<>();
+        synchronized (this) {
+            Set<Node> candidates = selector.charAt(0) == '#' ? nodesById.get(key) : nodesByStyleClass.get(key);
+            if (candidates != null) {
+                for (Node candidate : candidates) {
+                    if (candidate != null && isWithin(candidate, roots)) {
+                        result.add(candidate);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes all listeners and forgets every indexed node.
+     */
+    public void clear() {
+        runFx(() -> {
+            synchronized (this) {
+                for (Node node : indexedRoots.toArray(new Node[0])) {
+                    unindex(node);
+                }
+                indexedRoots.clear();
+                nodesById.clear();
+                nodesByStyleClass.clear();
+            }
+        });
+    }
+
+    private synchronized boolean isIndexedRoot(Node root) {
+        return indexedRoots.contains(root);
+    }
+
+    private synchronized void indexRoot(Node root) {
+        if (indexedRoots.add(root)) {
+            index(root);
+        }
+    }
+
+    private static boolean isWithin(Node node, Collection<Node> roots) {
+        for (Node current = node; current != null; current = current.getParent()) {
+            if (roots.contains(current)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized void index(Node node) {
+        if (indexedNodes.containsKey(node)) {
+            return;
+        }
+
+        NodeListeners listeners = new NodeListeners(node);
+        indexedNodes.put(node, listeners);
+        add(nodesById, node.getId(), node);
+        for (String styleClass : node.getStyleClass()) {
+            add(nodesByStyleClass, styleClass, node);
+        }
+        node.idProperty().addListener(idListener);
+        node.getStyleClass().addListener(listeners.styleClassListener);
+
+        if (node instanceof Parent) {
+            Parent parent = (Parent) node;
+            parent.getChildrenUnmodifiable().addListener(listeners.childrenListener);
+            for (Node child : parent.getChildrenUnmodifiable()) {
+                index(child);
+            }
+        }
+    }
+
+    private synchronized void unindex(Node node) {
+        NodeListeners listeners = indexedNodes.remove(node);
+        if (listeners == null) {
+            return;
+        }
+
+        remove(nodesById, node.getId(), node);
+        for (String styleClass : node.getStyleClass()) {
+            remove(nodesByStyleClass, styleClass, node);
+        }
+        node.idProperty().removeListener(idListener);
+        node.getStyleClass().removeListener(listeners.styleClassListener);
+
+        if (node instanceof Parent) {
+            Parent parent = (Parent) node;
+            parent.getChildrenUnmodifiable().removeListener(listeners.childrenListener);
+            for (Node child : parent.getChildrenUnmodifiable()) {
+                unindex(child);
+            }
+        }
+    }
+
+    private synchronized void idChanged(ObservableValue<? extends String> observable, String oldValue, String newValue) {
+        Object bean = ((ReadOnlyProperty<?>) observable).getBean();
+        if (bean instanceof Node) {
+            remove(nodesById, oldValue, (Node) bean);
+            add(nodesById, newValue, (Node) bean);
+        }
+    }
+
+    private static void add(Map<String, Set<Node>> nodes, String key, Node node) {
+        if (key != null) {
+            nodes.computeIfAbsent(key, k -> Collections.newSetFromMap(new WeakHashMap<>())).add(node);
+        }
+    }
+
+    private static void remove(Map<String, Set<Node>> nodes, String key, Node node) {
+        if (key != null) {
+            Set<Node> set = nodes.get(key);
+            if (set != null) {
+                set.remove(node);
+                if (set.isEmpty()) {
+                    nodes.remove(key);
+                }
+            }
+        }
+    }
+
+    private final class NodeListeners {
+        private final WeakReference<Node> node;
+        private final ListChangeListener<String> styleClassListener = this::styleClassChanged;
+        private final ListChangeListener<Node> childrenListener = this::childrenChanged;
+
+        private NodeListeners(Node node) {
+            this.node = new WeakReference<>(node);
+        }
+
+        private void styleClassChanged(ListChangeListener.Change<? extends String> change) {
+            Node target = node.get();
+            if (target == null) {
+                return;
+            }
+            synchronized (SelectorIndex.this) {
+                while (change.next()) {
+                    for (String styleClass : change.getRemoved()) {
+                        if (!target.getStyleClass().contains(styleClass)) {
+                            remove(nodesByStyleClass, styleClass, target);
+                        }
+                    }
+                    for (String styleClass : change.getAddedSubList()) {
+                        add(nodesByStyleClass, styleClass, target);
+                    }
+                }
+            }
+        }
+
+        private void childrenChanged(ListChangeListener.Change<? extends Node> change) {
+            synchronized (SelectorIndex.this) {
+                while (change.next()) {
+                    for (Node child : change.getRemoved()) {
+                        // a node moved to another indexed parent stays indexed
+                        Parent parent = child.getParent();
+                        if (parent == null || !indexedNodes.containsKey(parent)) {
+                            unindex(child);
+                        }
+                    }
+                    for (Node child : change.getAddedSubList()) {
+                        index(child);
+                    }
+                }
+            }
+        }
+    }
+}
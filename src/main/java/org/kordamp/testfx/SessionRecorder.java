@@ -0,0 +1,238 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import javafx.geometry.HorizontalDirection;
+import javafx.geometry.Point2D;
+import javafx.geometry.VerticalDirection;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.MouseButton;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Records every {@code QueryChain} step to an append-only binary log that
+ * {@code SessionReplayer} can read back and re-execute.
+ * <p>
+ * Each step stores its chain, selector, the path of the node it acted on, its arguments and its
+ * timing. Strings are written once and referred to by id afterwards, so a step usually takes a few
+ * dozen bytes and recording amounts to copying them into a buffer that is written to the file in
+ * large blocks.
+ *
+ * @author Andres Almiray
+ */
+public final class SessionRecorder implements ChainListener, Closeable {
+    static final int MAGIC = 0x54465852; // "TFXR"
+    static final byte VERSION = 1;
+
+    static final byte RECORD_END = 0;
+    static final byte RECORD_STRING = 1;
+    static final byte RECORD_STEP = 2;
+
+    static final byte ARG_STRING = 1;
+    static final byte ARG_INT = 2;
+    static final byte ARG_LONG = 3;
+    static final byte ARG_DOUBLE = 4;
+    static final byte ARG_KEYS = 5;
+    static final byte ARG_BUTTONS = 6;
+    static final byte ARG_POINT = 7;
+    static final byte ARG_KEY = 8;
+    static final byte ARG_VERTICAL = 9;
+    static final byte ARG_HORIZONTAL = 10;
+
+    static final int NO_STRING = -1;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private ByteBuffer record = ByteBuffer.allocate(512);
+    private boolean closed;
+
+    /**
+     * Starts a new log at {@code file}, replacing any previous content.
+     */
+    public SessionRecorder(Path file) throws IOException {
+        requireNonNull(file, "Argument 'file' must not be null");
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+        buffer.putInt(MAGIC);
+        buffer.put(VERSION);
+    }
+
+    @Override
+    public synchronized void onStep(ChainEvent event) {
+        if (closed) {
+            return;
+        }
+        try {
+            int step = intern(event.getStep());
+            int description = intern(event.getDescription());
+            int selector = intern(event.getSelector());
+            int nodePath = intern(NodePaths.pathOf(event.getTarget()));
+
+            List<Object> arguments = event.getArguments();
+            record.clear();
+            ensureRecord(45);
+            record.put(RECORD_STEP);
+            record.putLong(event.getTimestamp());
+            record.putLong(event.getDurationNanos());
+            record.putLong(event.getChainId());
+            record.putInt(step);
+            record.putInt(description);
+            record.putInt(selector);
+            record.putInt(nodePath);
+            record.put((byte) arguments.size());
+            for (Object argument : arguments) {
+                writeArgument(argument);
+            }
+            record.flip();
+            append(record);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not record step " + event, e);
+        }
+    }
+
+    /**
+     * Writes the buffered steps and closes the log.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush();
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeArgument(Object argument) throws IOException {
+        if (argument instanceof KeyCode[]) {
+            KeyCode[] keys = (KeyCode[]) argument;
+            int[] ids = new int[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                ids[i] = intern(keys[i].name());
+            }
+            ensureRecord(3 + 4 * ids.length);
+            record.put(ARG_KEYS).putShort((short) ids.length);
+            for (int id : ids) {
+                record.putInt(id);
+            }
+        } else if (argument instanceof MouseButton[]) {
+            MouseButton[] buttons = (MouseButton[]) argument;
+            ensureRecord(3 + buttons.length);
+            record.put(ARG_BUTTONS).putShort((short) buttons.length);
+            for (MouseButton button : buttons) {
+                record.put((byte) button.ordinal());
+            }
+        } else if (argument instanceof Point2D) {
+            ensureRecord(17);
+            record.put(ARG_POINT).putDouble(((Point2D) argument).getX()).putDouble(((Point2D) argument).getY());
+        } else if (argument instanceof KeyCode) {
+            int id = intern(((KeyCode) argument).name());
+            ensureRecord(5);
+            record.put(ARG_KEY).putInt(id);
+        } else if (argument instanceof VerticalDirection) {
+            ensureRecord(2);
+            record.put(ARG_VERTICAL).put((byte) ((VerticalDirection) argument).ordinal());
+        } else if (argument instanceof HorizontalDirection) {
+            ensureRecord(2);
+            record.put(ARG_HORIZONTAL).put((byte) ((HorizontalDirection) argument).ordinal());
+        } else if (argument instanceof Integer) {
+            ensureRecord(5);
+            record.put(ARG_INT).putInt((Integer) argument);
+        } else if (argument instanceof Long) {
+            ensureRecord(9);
+            record.put(ARG_LONG).putLong((Long) argument);
+        } else if (argument instanceof Double) {
+            ensureRecord(9);
+            record.put(ARG_DOUBLE).putDouble((Double) argument);
+        } else {
+            int id = intern(String.valueOf(argument));
+            ensureRecord(5);
+            record.put(ARG_STRING).putInt(id);
+        }
+    }
+
+    /**
+     * Returns the id of {@code value}, writing its definition to the log the first time it is seen.
+     */
+    private int intern(String value) throws IOException {
+        if (value == null) {
+            return NO_STRING;
+        }
+        Integer id = strings.get(value);
+        if (id != null) {
+            return id;
+        }
+        int newId = strings.size();
+        strings.put(value, newId);
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer definition = ByteBuffer.allocate(9 + bytes.length);
+        definition.put(RECORD_STRING).putInt(newId).putInt(bytes.length).put(bytes);
+        definition.flip();
+        append(definition);
+        return newId;
+    }
+
+    private void ensureRecord(int bytes) {
+        if (record.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(record.capacity() * 2, record.position() + bytes));
+            record.flip();
+            larger.put(record);
+            record = larger;
+        }
+    }
+
+    private void append(ByteBuffer bytes) throws IOException {
+        if (buffer.remaining() < bytes.remaining()) {
+            flush();
+            if (buffer.remaining() < bytes.remaining()) {
+                write(bytes);
+                return;
+            }
+        }
+        buffer.put(bytes);
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        write(buffer);
+        buffer.clear();
+    }
+
+    private void write(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+}
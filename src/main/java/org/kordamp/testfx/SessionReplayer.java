@@ -0,0 +1,341 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import javafx.geometry.HorizontalDirection;
+import javafx.geometry.Point2D;
+import javafx.geometry.VerticalDirection;
+import javafx.scene.Node;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyCodeCombination;
+import javafx.scene.input.KeyCombination;
+import javafx.scene.input.MouseButton;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+import static org.kordamp.testfx.FxThreadUtils.callFx;
+
+/**
+ * Reads session logs written by {@code SessionRecorder} and re-executes them against the running
+ * application at full speed.
+ * <p>
+ * Recorded think time is dropped: {@code sleep} steps are skipped, and {@code waitUntil} steps,
+ * whose conditions can not be recorded, are replayed as {@code settle()}. Chains are re-created from
+ * their selector, or from the path of the node they resolved to when they were built from a
+ * matcher or predicate, or opened by {@code find}, {@code row}, {@code item} or a
+ * {@code QueryScope}. Chains whose node can not be found again are reported with all their steps. Steps that run user code, such as {@code interact} and {@code verifyThat},
+ * can not be replayed and are reported back.
+ *
+ * @author Andres Almiray
+ */
+public final class SessionReplayer {
+    // steps that start a new chain rather than act on an existing one
+    private static final Set<String> CHAIN_STEPS = new HashSet<>(Arrays.asList("$", "$$", "find", "row", "item"));
+
+    private SessionReplayer() {
+        // prevent instantiation
+    }
+
+    public static List<RecordedStep> read(Path file) throws IOException {
+        requireNonNull(file, "Argument 'file' must not be null");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 5 || buffer.getInt() != SessionRecorder.MAGIC) {
+                throw new IOException(file + " is not a session log");
+            }
+            byte version = buffer.get();
+            if (version != SessionRecorder.VERSION) {
+                throw new IOException(file + " has unsupported version " + version);
+            }
+
+            Map<Integer, String> strings = new HashMap<>();
+            List<RecordedStep> steps = new ArrayList<>();
+            while (buffer.hasRemaining()) {
+                byte type = buffer.get();
+                if (type == SessionRecorder.RECORD_END) {
+                    break;
+                } else if (type == SessionRecorder.RECORD_STRING) {
+                    int id = buffer.getInt();
+                    byte[] bytes = new byte[buffer.getInt()];
+                    buffer.get(bytes);
+                    strings.put(id, new String(bytes, StandardCharsets.UTF_8));
+                } else if (type == SessionRecorder.RECORD_STEP) {
+                    steps.add(readStep(buffer, strings));
+                } else {
+                    throw new IOException(file + " contains an unknown record type " + type);
+                }
+            }
+            return steps;
+        }
+    }
+
+    /**
+     * Replays the log at {@code file}.
+     *
+     * @return the steps that could not be replayed
+     */
+    public static List<RecordedStep> replay(Path file) throws IOException {
+        return replay(read(file));
+    }
+
+    /**
+     * Replays {@code steps} in order.
+     *
+     * @return the steps that could not be replayed
+     */
+    public static List<RecordedStep> replay(List<RecordedStep> steps) {
+        requireNonNull(steps, "Argument 'steps' must not be null");
+        Map<Long, QueryChain> chains = new HashMap<>();
+        List<RecordedStep> skipped = new ArrayList<>();
+        // the robot used to resolve node paths is handed back once the whole session is replayed
+        TestFXProvider provider = QueryChain.getTestFXProvider();
+        TestFX testfx = provider.acquire();
+        try {
+            for (RecordedStep step : steps) {
+                if (CHAIN_STEPS.contains(step.getStep())) {
+                    QueryChain chain = createChain(testfx, step);
+                    if (chain == null) {
+                        skipped.add(step);
+                    } else {
+                        chains.put(step.getChainId(), chain);
+                    }
+                    continue;
+                }
+                QueryChain chain = chains.get(step.getChainId());
+                if (chain == null || !replayStep(chain, step)) {
+                    skipped.add(step);
+                }
+            }
+        } finally {
+            provider.release(testfx);
+        }
+        return skipped;
+    }
+
+    private static QueryChain createChain(TestFX testfx, RecordedStep step) {
+        if (step.getSelector() != null) {
+            return QueryChain.$(step.getSelector());
+        }
+        if (step.getNodePath() != null) {
+            Node node = resolve(testfx, step.getNodePath());
+            if (node != null) {
+                return QueryChain.$(CompiledQuery.of(node, "the node at " + step.getNodePath()));
+            }
+        }
+        return null;
+    }
+
+    private static boolean replayStep(QueryChain chain, RecordedStep step) {
+        List<Object> arguments = step.getArguments();
+        Object first = arguments.isEmpty() ? null : arguments.get(0);
+        switch (step.getStep()) {
+            case "click":
+                chain.click(buttons(first));
+                return true;
+            case "doubleClick":
+                chain.doubleClick(buttons(first));
+                return true;
+            case "rightClick":
+                chain.rightClick();
+                return true;
+            case "drag":
+                chain.drag(buttons(first));
+                return true;
+            case "drop":
+                chain.drop();
+                return true;
+            case "moveTo":
+            case "dropTo":
+                return replayPointStep(chain, step, first);
+            case "moveBy":
+                chain.moveBy((Double) first, (Double) arguments.get(1));
+                return true;
+            case "dropBy":
+                chain.dropBy((Double) first, (Double) arguments.get(1));
+                return true;
+            case "write":
+                chain.write((String) first);
+                return true;
+            case "type":
+                if (first instanceof KeyCode[]) {
+                    chain.type((KeyCode[]) first);
+                } else {
+                    chain.type((KeyCode) first, (Integer) arguments.get(1));
+                }
+                return true;
+            case "typeInBulk":
+                chain.typeInBulk((KeyCode) first, (Integer) arguments.get(1));
+                return true;
+            case "eraseText":
+                chain.eraseText((Integer) first);
+                return true;
+            case "eraseTextInBulk":
+                chain.eraseTextInBulk((Integer) first);
+                return true;
+            case "clearText":
+                chain.clearText();
+                return true;
+            case "push":
+                if (first instanceof KeyCode[]) {
+                    chain.push((KeyCode[]) first);
+                } else {
+                    chain.push((KeyCodeCombination) KeyCombination.valueOf((String) first));
+                }
+                return true;
+            case "press":
+                if (first instanceof MouseButton[]) {
+                    chain.press((MouseButton[]) first);
+                } else {
+                    chain.press((KeyCode[]) first);
+                }
+                return true;
+            case "release":
+                if (first instanceof MouseButton[]) {
+                    chain.release((MouseButton[]) first);
+                } else {
+                    chain.release((KeyCode[]) first);
+                }
+                return true;
+            case "scroll":
+                if (arguments.get(1) instanceof VerticalDirection) {
+                    chain.scroll((Integer) first, (VerticalDirection) arguments.get(1));
+                } else {
+                    chain.scroll((Integer) first, (HorizontalDirection) arguments.get(1));
+                }
+                return true;
+            case "scrollBy":
+                chain.scrollBy((Integer) first);
+                return true;
+            case "closeCurrentWindow":
+                chain.closeCurrentWindow();
+                return true;
+            case "interrupt":
+                if (first == null) {
+                    chain.interrupt();
+                } else {
+                    chain.interrupt((Integer) first);
+                }
+                return true;
+            case "waitUntil":
+            case "settle":
+                chain.settle();
+                return true;
+            case "sleep":
+                // recorded think time is what replaying skips
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean replayPointStep(QueryChain chain, RecordedStep step, Object point) {
+        boolean move = "moveTo".equals(step.getStep());
+        if (step.getNodePath() != null) {
+            Node node = resolve(chain.testfx(), step.getNodePath());
+            if (node == null) {
+                return false;
+            }
+            if (move) {
+                chain.moveTo(node);
+            } else {
+                chain.dropTo(node);
+            }
+            return true;
+        }
+        if (point instanceof Point2D) {
+            if (move) {
+                chain.moveTo((Point2D) point);
+            } else {
+                chain.dropTo((Point2D) point);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static Node resolve(TestFX testfx, String nodePath) {
+        return callFx(() -> NodePaths.resolve(nodePath, testfx.listWindows()));
+    }
+
+    private static MouseButton[] buttons(Object argument) {
+        return argument instanceof MouseButton[] ? (MouseButton[]) argument : new MouseButton[0];
+    }
+
+    private static RecordedStep readStep(MappedByteBuffer buffer, Map<Integer, String> strings) {
+        long timestamp = buffer.getLong();
+        long duration = buffer.getLong();
+        long chainId = buffer.getLong();
+        String step = strings.get(buffer.getInt());
+        String description = strings.get(buffer.getInt());
+        String selector = strings.get(buffer.getInt());
+        String nodePath = strings.get(buffer.getInt());
+        int argumentCount = buffer.get() & 0xff;
+        List<Object> arguments = new ArrayList<>(argumentCount);
+        for (int i = 0; i < argumentCount; i++) {
+            arguments.add(readArgument(buffer, strings));
+        }
+        return new RecordedStep(timestamp, duration, chainId, step, description, selector, nodePath, arguments);
+    }
+
+    private static Object readArgument(MappedByteBuffer buffer, Map<Integer, String> strings) {
+        byte tag = buffer.get();
+        switch (tag) {
+            case SessionRecorder.ARG_STRING:
+                return strings.get(buffer.getInt());
+            case SessionRecorder.ARG_INT:
+                return buffer.getInt();
+            case SessionRecorder.ARG_LONG:
+                return buffer.getLong();
+            case SessionRecorder.ARG_DOUBLE:
+                return buffer.getDouble();
+            case SessionRecorder.ARG_KEYS:
+                KeyCode[] keys = new KeyCode[buffer.getShort()];
+                for (int i = 0; i < keys.length; i++) {
+                    keys[i] = KeyCode.valueOf(strings.get(buffer.getInt()));
+                }
+                return keys;
+            case SessionRecorder.ARG_BUTTONS:
+                MouseButton[] buttons = new MouseButton[buffer.getShort()];
+                for (int i = 0; i < buttons.length; i++) {
+                    buttons[i] = MouseButton.values()[buffer.get()];
+                }
+                return buttons;
+            case SessionRecorder.ARG_POINT:
+                return new Point2D(buffer.getDouble(), buffer.getDouble());
+            case SessionRecorder.ARG_KEY:
+                return KeyCode.valueOf(strings.get(buffer.getInt()));
+            case SessionRecorder.ARG_VERTICAL:
+                return VerticalDirection.values()[buffer.get()];
+            case SessionRecorder.ARG_HORIZONTAL:
+                return HorizontalDirection.values()[buffer.get()];
+            default:
+                throw new IllegalStateException("Unknown argument tag " + tag);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import org.testfx.api.FxToolkit;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The main class of the JVMs forked by {@code ShardedRunner}. It boots the FX toolkit once, then
+ * reads scenario names from standard input, one per line, runs each of them with the same warm
+ * toolkit and robot and reports the outcome on standard output. Whatever the scenarios print to
+ * standard output is sent to standard error instead, so it can not interfere with the reports.
+ * <p>
+ * A scenario is either {@code "com.acme.LoginScenario"}, a {@code Runnable} with a no-args
+ * constructor, or {@code "com.acme.LoginTest#validLogin"}, a public no-args method, static or on a
+ * new instance of the class. Stages left open by a scenario are closed before the next one runs.
+ *
+ * @author Andres Almiray
+ */
+public final class ShardWorker {
+    static final String READY = "@@testfx-shard-ready";
+    static final String RESULT = "@@testfx-shard-result\t";
+    static final String PASSED = "PASSED";
+    static final String FAILED = "FAILED";
+
+    private ShardWorker() {
+        // prevent instantiation
+    }
+
+    public static void main(String[] args) throws Exception {
+        PrintStream protocol = System.out;
+        System.setOut(System.err);
+
+        FxToolkit.registerPrimaryStage();
+        protocol.println(READY);
+        protocol.flush();
+
+        BufferedReader input = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String scenario;
+        while ((scenario = input.readLine()) != null && !scenario.isEmpty()) {
+            long start = System.nanoTime();
+            String failure = null;
+            try {
+                run(scenario);
+            } catch (Throwable throwable) {
+                failure = describe(throwable);
+            } finally {
+                try {
+                    FxToolkit.cleanupStages();
+                    TestFXProvider provider = QueryChain.getTestFXProvider();
+                    provider.reset(provider.acquire());
+                } catch (Exception e) {
+                    failure = failure != null ? failure : "Cleanup failed: " + describe(e);
+                }
+            }
+            long duration = System.nanoTime() - start;
+            protocol.println(RESULT + (failure == null ? PASSED : FAILED) + '\t' + duration + '\t' + TextEscapes.escape(failure != null ? failure : ""));
+            protocol.flush();
+        }
+        // the FX toolkit keeps non-daemon threads around
+        System.exit(0);
+    }
+
+    static void run(String scenario) throws Throwable {
+        int hash = scenario.indexOf('#');
+        Class<?> type = Class.forName(hash < 0 ? scenario : scenario.substring(0, hash));
+        if (hash < 0) {
+            Object instance = type.getDeclaredConstructor().newInstance();
+            if (!(instance instanceof Runnable)) {
+                throw new IllegalArgumentException(scenario + " is not a Runnable");
+            }
+            ((Runnable) instance).run();
+            return;
+        }
+
+        Method method = type.getMethod(scenario.substring(hash + 1));
+        Object target = Modifier.isStatic(method.getModifiers()) ? null : type.getDeclaredConstructor().newInstance();
+        try {
+            method.invoke(target);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static String describe(Throwable throwable) {
+        StringWriter trace = new StringWriter();
+        throwable.printStackTrace(new PrintWriter(trace));
+        return trace.toString().trim();
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Runs scenarios on several forked JVMs at once and merges their results into one
+ * {@code SuiteReport}.
+ * <p>
+ * Scenarios are dealt into one shard per fork. Each fork boots the FX toolkit once (headless by
+ * default, see {@code HeadlessMode}) and runs the scenarios of its shard one after the other with
+ * the same warm toolkit and robot, see {@code ShardWorker}. A fork that does not boot within the
+ * boot timeout is killed. A fork that runs out of work steals
+ * from the back of the largest remaining shard, so uneven scenario lengths even out. A fork that
+ * crashes, or runs a scenario past the scenario timeout, is restarted; the scenario is reported as
+ * failed with the worker's exit code. Scenarios left over once every fork has given up report the
+ * last fork failure
+ * <pre>
+ * SuiteReport report = new ShardedRunner()
+ *     .forks(8)
+ *     .jvmArgs("-Xmx512m")
+ *     .run(Arrays.asList("com.acme.LoginTest#validLogin", "com.acme.OrdersScenario"));
+ * System.out.println(report.report());
+ * </pre>
+ *
+ * @author Andres Almiray
+ */
+public final class ShardedRunner {
+    private static final int MAX_RESTARTS = 3;
+
+    private int forks = Runtime.getRuntime().availableProcessors();
+    private boolean headless = true;
+    private String classpath = System.getProperty("java.class.path");
+    private final List<String> jvmArgs = new ArrayList<>();
+    private long scenarioTimeoutNanos = TimeUnit.MINUTES.toNanos(5);
+    private long bootTimeoutNanos = TimeUnit.MINUTES.toNanos(1);
+
+    // guarded by this, while running
+    private List<Deque<Integer>> shards;
+    // why the last fork was restarted or gave up, reported on scenarios no fork got to run
+    private volatile String lastForkFailure;
+
+    public ShardedRunner forks(int forks) {
+        if (forks < 1) {
+            throw new IllegalArgumentException("Argument 'forks' must be at least 1");
+        }
+        this.forks = forks;
+        return this;
+    }
+
+    public ShardedRunner headless(boolean headless) {
+        this.headless = headless;
+        return this;
+    }
+
+    public ShardedRunner classpath(String classpath) {
+        this.classpath = requireNonNull(classpath, "Argument 'classpath' must not be null");
+        return this;
+    }
+
+    public ShardedRunner jvmArgs(String... jvmArgs) {
+        this.jvmArgs.addAll(Arrays.asList(requireNonNull(jvmArgs, "Argument 'jvmArgs' must not be null")));
+        return this;
+    }
+
+    public ShardedRunner scenarioTimeout(long timeout, TimeUnit unit) {
+        this.scenarioTimeoutNanos = requireNonNull(unit, "Argument 'unit' must not be null").toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Sets how long a fork may take to boot the FX toolkit before it is killed.
+     */
+    public ShardedRunner bootTimeout(long timeout, TimeUnit unit) {
+        this.bootTimeoutNanos = requireNonNull(unit, "Argument 'unit' must not be null").toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Runs {@code scenarios} and blocks until all of them have completed.
+     */
+    public SuiteReport run(List<String> scenarios) throws InterruptedException {
+        requireNonNull(scenarios, "Argument 'scenarios' must not be null");
+        int forkCount = Math.max(1, Math.min(forks, scenarios.size()));
+        lastForkFailure = null;
+        synchronized (this) {
+            shards = new ArrayList<>(forkCount);
+            for (int i = 0; i < forkCount; i++) {
+                shards.add(new ArrayDeque<>());
+            }
+            for (int i = 0; i < scenarios.size(); i++) {
+                shards.get(i % forkCount).addLast(i);
+            }
+        }
+
+        long start = System.nanoTime();
+        ScenarioResult[] results = new ScenarioResult[scenarios.size()];
+        List<Thread> drivers = new ArrayList<>(forkCount);
+        for (int i = 0; i < forkCount; i++) {
+            int fork = i;
+            Thread driver = new Thread(() -> drive(fork, scenarios, results), "testfx-shard-" + fork);
+            driver.start();
+            drivers.add(driver);
+        }
+        for (Thread driver : drivers) {
+            driver.join();
+        }
+
+        String notRun = lastForkFailure != null ? "Not run, every fork failed; last failure: " + lastForkFailure : "Not run, every fork failed";
+        List<ScenarioResult> merged = new ArrayList<>(results.length);
+        for (int i = 0; i < results.length; i++) {
+            merged.add(results[i] != null ? results[i] : new ScenarioResult(scenarios.get(i), -1, false, 0, notRun));
+        }
+        return new SuiteReport(merged, forkCount, System.nanoTime() - start);
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // PRIVATE METHODS.
+    //---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the next scenario for {@code fork}: the head of its own shard or, once that is empty,
+     * the tail of the largest other shard.
+     */
+    private synchronized Integer next(int fork) {
+        Integer next = shards.get(fork).pollFirst();
+        if (next != null) {
+            return next;
+        }
+        Deque<Integer> victim = null;
+        for (Deque<Integer> shard : shards) {
+            if (victim == null || shard.size() > victim.size()) {
+                victim = shard;
+            }
+        }
+        return victim != null ? victim.pollLast() : null;
+    }
+
+    private void drive(int fork, List<String> scenarios, ScenarioResult[] results) {
+        Fork process = null;
+        int restarts = 0;
+        try {
+            Integer next;
+            while ((next = next(fork)) != null) {
+                if (process == null) {
+                    try {
+                        process = Fork.start(command(), bootTimeoutNanos);
+                    } catch (IOException e) {
+                        lastForkFailure = "Fork " + fork + " did not start: " + e.getMessage();
+                        results[next] = new ScenarioResult(scenarios.get(next), fork, false, 0, lastForkFailure);
+                        return;
+                    }
+                }
+                String scenario = scenarios.get(next);
+                long start = System.nanoTime();
+                String[] report = process.run(scenario, scenarioTimeoutNanos);
+                if (report != null) {
+                    boolean passed = ShardWorker.PASSED.equals(report[0]);
+                    results[next] = new ScenarioResult(scenario, fork, passed, Long.parseLong(report[1]),
+                        passed ? null : TextEscapes.unescape(report[2]));
+                } else {
+                    lastForkFailure = "Fork " + fork + " " + process.exitStatus() + " while running " + scenario;
+                    results[next] = new ScenarioResult(scenario, fork, false, System.nanoTime() - start, lastForkFailure);
+                    process.destroy();
+                    process = null;
+                    if (++restarts > MAX_RESTARTS) {
+                        return;
+                    }
+                }
+            }
+        } finally {
+            if (process != null) {
+                process.close();
+            }
+        }
+    }
+
+    private List<String> command() {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-cp");
+        command.add(classpath);
+        command.addAll(jvmArgs);
+        if (headless) {
+            for (Map.Entry<String, String> property : HeadlessMode.properties().entrySet()) {
+                command.add("-D" + property.getKey() + "=" + property.getValue());
+            }
+        }
+        command.add(ShardWorker.class.getName());
+        return command;
+    }
+
+    /**
+     * A forked {@code ShardWorker} JVM.
+     */
+    private static final class Fork {
+        private final Process process;
+        private final BufferedReader output;
+        private final Writer input;
+        private volatile boolean timedOut;
+
+        private Fork(Process process) {
+            this.process = process;
+            this.output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+            this.input = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Starts a worker and waits until it has booted the FX toolkit.
+         *
+         * @throws IOException if the worker could not be started, exited or did not boot within
+         *                     {@code timeoutNanos}; the message says which
+         */
+        static Fork start(List<String> command, long timeoutNanos) throws IOException {
+            Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            Fork fork = new Fork(process);
+            ScheduledFuture<?> watchdog = WaitSupport.scheduler().schedule(fork::kill, timeoutNanos, TimeUnit.NANOSECONDS);
+            try {
+                String line;
+                while ((line = fork.output.readLine()) != null) {
+                    if (ShardWorker.READY.equals(line)) {
+                        return fork;
+                    }
+                }
+            } catch (IOException e) {
+                // the exit status below tells more than the broken pipe
+            } finally {
+                watchdog.cancel(false);
+            }
+            String status = fork.timedOut ? "did not boot within " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms" : fork.exitStatus();
+            fork.destroy();
+            throw new IOException(status);
+        }
+
+        /**
+         * Runs {@code scenario} and returns the status, duration and failure it reported, or
+         * {@code null} if the worker exited or did not report within {@code timeoutNanos}.
+         */
+        String[] run(String scenario, long timeoutNanos) {
+            ScheduledFuture<?> watchdog = WaitSupport.scheduler().schedule(this::kill, timeoutNanos, TimeUnit.NANOSECONDS);
+            try {
+                input.write(scenario);
+                input.write('\n');
+                input.flush();
+                String line;
+                while ((line = output.readLine()) != null) {
+                    if (line.startsWith(ShardWorker.RESULT)) {
+                        return line.substring(ShardWorker.RESULT.length()).split("\t", 3);
+                    }
+                }
+                return null;
+            } catch (IOException e) {
+                return null;
+            } finally {
+                watchdog.cancel(false);
+            }
+        }
+
+        void close() {
+            try {
+                input.close();
+                if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (IOException e) {
+                process.destroyForcibly();
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Describes why the worker stopped answering: killed by a watchdog, or its exit code.
+         */
+        String exitStatus() {
+            if (timedOut) {
+                return "timed out";
+            }
+            try {
+                if (process.waitFor(1, TimeUnit.SECONDS)) {
+                    return "exited with code " + process.exitValue();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "stopped responding";
+        }
+
+        void destroy() {
+            process.destroyForcibly();
+        }
+
+        private void kill() {
+            timedOut = true;
+            process.destroyForcibly();
+        }
+    }
+}
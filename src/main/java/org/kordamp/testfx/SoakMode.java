@@ -0,0 +1,154 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import javafx.scene.image.Image;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the heap flat for chains that run for hours. While enabled, chains hold the nodes they
+ * resolved through weak references and look them up again once they are collected. Captures are
+ * not retained unless asked for: {@code enable(int)} keeps the images returned by
+ * {@code capture()} in a small LRU, so the latest ones can be inspected after a failure.
+ * Use {@code ChainSession} to release every chain of a scenario at a known point.
+ * <p>
+ * The counts returned by {@code liveChains()}, {@code retainedCaptures()} and
+ * {@code openSessions()} make it easy to assert that a long run does not leak.
+ *
+ * @author Andres Almiray
+ */
+public final class SoakMode {
+    public static final int DEFAULT_MAX_CAPTURES = 0;
+
+    private static final Set<QueryChain> CHAINS = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+    private static final AtomicInteger OPEN_SESSIONS = new AtomicInteger();
+    // guarded by itself
+    private static final Map<String, Image> CAPTURES = new LinkedHashMap<String, Image>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Image> eldest) {
+            return size() > maxCaptures;
+        }
+    };
+
+    private static volatile boolean enabled;
+    private static volatile int maxCaptures = DEFAULT_MAX_CAPTURES;
+
+    private SoakMode() {
+        // prevent instantiation
+    }
+
+    /**
+     * Enables soak mode without retaining captures.
+     */
+    public static void enable() {
+        enable(DEFAULT_MAX_CAPTURES);
+    }
+
+    /**
+     * Enables soak mode, keeping the latest capture of at most {@code maxCaptures} chains.
+     */
+    public static void enable(int maxCaptures) {
+        if (maxCaptures < 0) {
+            throw new IllegalArgumentException("Argument 'maxCaptures' must not be negative");
+        }
+        SoakMode.maxCaptures = maxCaptures;
+        synchronized (CAPTURES) {
+            while (CAPTURES.size() > maxCaptures) {
+                CAPTURES.remove(CAPTURES.keySet().iterator().next());
+            }
+        }
+        enabled = true;
+    }
+
+    /**
+     * Disables soak mode and drops the retained captures. Chains created from now on hold their
+     * nodes strongly again.
+     */
+    public static void disable() {
+        enabled = false;
+        CHAINS.clear();
+        synchronized (CAPTURES) {
+            CAPTURES.clear();
+        }
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static int getMaxCaptures() {
+        return maxCaptures;
+    }
+
+    /**
+     * Returns the number of chains created in soak mode that have not been garbage collected.
+     */
+    public static int liveChains() {
+        return CHAINS.size();
+    }
+
+    public static int retainedCaptures() {
+        synchronized (CAPTURES) {
+            return CAPTURES.size();
+        }
+    }
+
+    /**
+     * Returns the number of {@code ChainSession}s that have been opened and not closed yet.
+     */
+    public static int openSessions() {
+        return OPEN_SESSIONS.get();
+    }
+
+    /**
+     * Returns the retained captures keyed by the description of the chain that took them, least
+     * recently captured first.
+     */
+    public static Map<String, Image> recentCaptures() {
+        synchronized (CAPTURES) {
+            return Collections.unmodifiableMap(new LinkedHashMap<>(CAPTURES));
+        }
+    }
+
+    static void track(QueryChain chain) {
+        if (enabled) {
+            CHAINS.add(chain);
+        }
+    }
+
+    static void retainCapture(String description, Image image) {
+        if (enabled && maxCaptures > 0) {
+            synchronized (CAPTURES) {
+                CAPTURES.remove(description);
+                CAPTURES.put(description, image);
+            }
+        }
+    }
+
+    static void sessionOpened() {
+        OPEN_SESSIONS.incrementAndGet();
+    }
+
+    static void sessionClosed() {
+        OPEN_SESSIONS.decrementAndGet();
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The merged results and timings of every scenario run by a {@code ShardedRunner}.
+ *
+ * @author Andres Almiray
+ */
+public final class SuiteReport {
+    private final List<ScenarioResult> results;
+    private final int forks;
+    private final long wallNanos;
+
+    SuiteReport(List<ScenarioResult> results, int forks, long wallNanos) {
+        this.results = Collections.unmodifiableList(new ArrayList<>(results));
+        this.forks = forks;
+        this.wallNanos = wallNanos;
+    }
+
+    /**
+     * Returns the result of every scenario, in the order the scenarios were given.
+     */
+    public List<ScenarioResult> getResults() {
+        return results;
+    }
+
+    public List<ScenarioResult> getFailures() {
+        List<ScenarioResult> failures = new ArrayList<>();
+        for (ScenarioResult result : results) {
+            if (!result.isPassed()) {
+                failures.add(result);
+            }
+        }
+        return failures;
+    }
+
+    public boolean isPassed() {
+        return getFailures().isEmpty();
+    }
+
+    public int getForks() {
+        return forks;
+    }
+
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    /**
+     * Returns the sum of the scenario durations, which the forks spread over the wall time.
+     */
+    public long getTotalNanos() {
+        long total = 0;
+        for (ScenarioResult result : results) {
+            total += result.getDurationNanos();
+        }
+        return total;
+    }
+
+    /**
+     * Returns a text report: totals, the time spent by each fork, the failures and the slowest
+     * scenarios.
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        List<ScenarioResult> failures = getFailures();
+        report.append(String.format("%d scenarios, %d failed, %d forks, wall %d ms, total %d ms%n",
+            results.size(), failures.size(), forks, millis(wallNanos), millis(getTotalNanos())));
+
+        long[] forkNanos = new long[forks];
+        int[] forkScenarios = new int[forks];
+        for (ScenarioResult result : results) {
+            if (result.getFork() >= 0) {
+                forkNanos[result.getFork()] += result.getDurationNanos();
+                forkScenarios[result.getFork()]++;
+            }
+        }
+        for (int i = 0; i < forks; i++) {
+            report.append(String.format("  fork %d: %d scenarios, %d ms%n", i, forkScenarios[i], millis(forkNanos[i])));
+        }
+
+        if (!failures.isEmpty()) {
+            report.append("failures:").append(System.lineSeparator());
+            for (ScenarioResult failure : failures) {
+                report.append("  ").append(failure.getScenario()).append(": ").append(failure.getFailure())
+                    .append(System.lineSeparator());
+            }
+        }
+
+        List<ScenarioResult> slowest = new ArrayList<>(results);
+        slowest.sort(Comparator.comparingLong(ScenarioResult::getDurationNanos).reversed());
+        report.append("slowest:").append(System.lineSeparator());
+        for (ScenarioResult result : slowest.subList(0, Math.min(10, slowest.size()))) {
+            report.append(String.format("  %8d ms  %s%n", millis(result.getDurationNanos()), result.getScenario()));
+        }
+        return report.toString();
+    }
+
+    @Override
+    public String toString() {
+        return report();
+    }
+
+    private static long millis(long nanos) {
+        return nanos / 1_000_000;
+    }
+}
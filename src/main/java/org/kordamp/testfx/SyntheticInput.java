@@ -0,0 +1,349 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import javafx.event.Event;
+import javafx.event.EventType;
+import javafx.geometry.Bounds;
+import javafx.geometry.Point2D;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyCodeCombination;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.PickResult;
+import javafx.scene.input.ScrollEvent;
+import javafx.stage.Window;
+import org.testfx.api.FxRobotException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.kordamp.testfx.FxThreadUtils.runFx;
+
+/**
+ * Fires mouse, keyboard and scroll events straight at their target nodes with
+ * {@code Event.fireEvent}, bypassing the OS-level robot.
+ * <p>
+ * Keeps track of the pointer target, pressed buttons and pressed keys so that sequences such as
+ * drag and drop or key combinations produce consistent events. Events are dispatched
+ * synchronously on the FX thread.
+ *
+ * @author Andres Almiray
+ */
+final class SyntheticInput {
+    private static final double SCROLL_DELTA_PER_TICK = 40d;
+
+    private final Set<MouseButton> pressedButtons = EnumSet.noneOf(MouseButton.class);
+    private final Set<KeyCode> pressedKeys = new LinkedHashSet<>();
+    private Node pointerTarget;
+    private Node pressTarget;
+    private Point2D pointerLocation;
+
+    //---------------------------------------------------------------------------------------------
+    // MOUSE.
+    //---------------------------------------------------------------------------------------------
+
+    void moveTo(Node node) {
+        runFx(() -> {
+            Point2D point = sceneCenterOf(node);
+            pointerTarget = node;
+            pointerLocation = point;
+            fireMouse(pressTarget != null ? pressTarget : node, pressTarget != null ? MouseEvent.MOUSE_DRAGGED : MouseEvent.MOUSE_MOVED,
+                point, MouseButton.NONE, 0);
+        });
+    }
+
+    void moveTo(Point2D screenPoint) {
+        runFx(() -> {
+            Node target = pressTarget != null ? pressTarget : pointerTarget;
+            if (target == null || target.getScene() == null) {
+                throw new FxRobotException("No target node for a synthetic move to " + screenPoint);
+            }
+            Point2D point = screenToScene(target.getScene(), screenPoint);
+            pointerLocation = point;
+            fireMouse(target, pressTarget != null ? MouseEvent.MOUSE_DRAGGED : MouseEvent.MOUSE_MOVED, point, MouseButton.NONE, 0);
+        });
+    }
+
+    void moveBy(double x, double y) {
+        runFx(() -> {
+            Node target = pressTarget != null ? pressTarget : pointerTarget;
+            if (target == null || pointerLocation == null) {
+                throw new FxRobotException("No target node for a synthetic move by " + x + ", " + y);
+            }
+            pointerLocation = pointerLocation.add(x, y);
+            fireMouse(target, pressTarget != null ? MouseEvent.MOUSE_DRAGGED : MouseEvent.MOUSE_MOVED, pointerLocation, MouseButton.NONE, 0);
+        });
+    }
+
+    void click(Node node, int clickCount, MouseButton... buttons) {
+        List<MouseButton> effectiveButtons = buttonsOrPrimary(buttons);
+        runFx(() -> {
+            Point2D point = sceneCenterOf(node);
+            pointerTarget = node;
+            pointerLocation = point;
+            for (int click = 1; click <= clickCount; click++) {
+                for (MouseButton button : effectiveButtons) {
+                    pressedButtons.add(button);
+                    fireMouse(node, MouseEvent.MOUSE_PRESSED, point, button, click);
+                    pressedButtons.remove(button);
+                    fireMouse(node, MouseEvent.MOUSE_RELEASED, point, button, click);
+                    fireMouse(node, MouseEvent.MOUSE_CLICKED, point, button, click);
+                }
+            }
+        });
+    }
+
+    void press(Node node, MouseButton... buttons) {
+        List<MouseButton> effectiveButtons = buttonsOrPrimary(buttons);
+        runFx(() -> {
+            Node target = node != null ? node : requirePointerTarget();
+            Point2D point = node != null ? sceneCenterOf(node) : pointerLocation;
+            pointerTarget = target;
+            pointerLocation = point;
+            pressTarget = target;
+            for (MouseButton button : effectiveButtons) {
+                pressedButtons.add(button);
+                fireMouse(target, MouseEvent.MOUSE_PRESSED, point, button, 1);
+            }
+        });
+    }
+
+    void release(MouseButton... buttons) {
+        runFx(() -> {
+            Node target = pressTarget != null ? pressTarget : requirePointerTarget();
+            List<MouseButton> released = buttons.length > 0 ? Arrays.asList(buttons) : new ArrayList<>(pressedButtons);
+            for (MouseButton button : released) {
+                if (pressedButtons.remove(button)) {
+                    fireMouse(target, MouseEvent.MOUSE_RELEASED, pointerLocation, button, 1);
+                }
+            }
+            if (pressedButtons.isEmpty()) {
+                pressTarget = null;
+            }
+        });
+    }
+
+    boolean isDragging() {
+        return pressTarget != null;
+    }
+
+    void scroll(Node node, double ticksX, double ticksY) {
+        runFx(() -> {
+            // like the mouse wheel, scroll wherever the pointer is and fall back to the given node
+            Node target = pointerTarget != null ? pointerTarget : node;
+            if (target == null) {
+                throw new FxRobotException("No target node for synthetic scroll events");
+            }
+            Point2D point = pointerTarget != null && pointerLocation != null ? pointerLocation : sceneCenterOf(target);
+            double deltaX = -ticksX * SCROLL_DELTA_PER_TICK;
+            double deltaY = -ticksY * SCROLL_DELTA_PER_TICK;
+            Point2D screen = sceneToScreen(target.getScene(), point);
+            Event.fireEvent(target, new ScrollEvent(ScrollEvent.SCROLL, point.getX(), point.getY(), screen.getX(), screen.getY(),
+                isDown(KeyCode.SHIFT), isDown(KeyCode.CONTROL), isDown(KeyCode.ALT), isDown(KeyCode.META),
+                false, false, deltaX, deltaY, deltaX, deltaY,
+                ScrollEvent.HorizontalTextScrollUnits.NONE, 0, ScrollEvent.VerticalTextScrollUnits.NONE, 0,
+                0, new PickResult(target, point.getX(), point.getY())));
+        });
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // KEYBOARD.
+    //---------------------------------------------------------------------------------------------
+
+    void press(Node node, KeyCode... keys) {
+        runFx(() -> {
+            Node target = keyTarget(node);
+            for (KeyCode key : keys) {
+                pressedKeys.add(key);
+                fireKey(target, KeyEvent.KEY_PRESSED, key);
+            }
+        });
+    }
+
+    void release(Node node, KeyCode... keys) {
+        runFx(() -> {
+            Node target = keyTarget(node);
+            List<KeyCode> released = keys.length > 0 ? Arrays.asList(keys) : new ArrayList<>(pressedKeys);
+            for (KeyCode key : released) {
+                if (pressedKeys.remove(key)) {
+                    fireKey(target, KeyEvent.KEY_RELEASED, key);
+                }
+            }
+        });
+    }
+
+    void type(Node node, int times, KeyCode... keys) {
+        runFx(() -> {
+            Node target = keyTarget(node);
+            for (int i = 0; i < times; i++) {
+                for (KeyCode key : keys) {
+                    typeKey(target, key);
+                }
+            }
+        });
+    }
+
+    void push(Node node, KeyCode... combination) {
+        runFx(() -> {
+            Node target = keyTarget(node);
+            for (KeyCode key : combination) {
+                pressedKeys.add(key);
+                fireKey(target, KeyEvent.KEY_PRESSED, key);
+            }
+            List<KeyCode> reversed = new ArrayList<>(Arrays.asList(combination));
+            Collections.reverse(reversed);
+            for (KeyCode key : reversed) {
+                pressedKeys.remove(key);
+                fireKey(target, KeyEvent.KEY_RELEASED, key);
+            }
+        });
+    }
+
+    void push(Node node, KeyCodeCombination combination) {
+        List<KeyCode> keys = new ArrayList<>();
+        if (combination.getShift() == KeyCodeCombination.ModifierValue.DOWN) {
+            keys.add(KeyCode.SHIFT);
+        }
+        if (combination.getControl() == KeyCodeCombination.ModifierValue.DOWN) {
+            keys.add(KeyCode.CONTROL);
+        }
+        if (combination.getAlt() == KeyCodeCombination.ModifierValue.DOWN) {
+            keys.add(KeyCode.ALT);
+        }
+        if (combination.getMeta() == KeyCodeCombination.ModifierValue.DOWN) {
+            keys.add(KeyCode.META);
+        }
+        if (combination.getShortcut() == KeyCodeCombination.ModifierValue.DOWN) {
+            keys.add(isMac() ? KeyCode.META : KeyCode.CONTROL);
+        }
+        keys.add(combination.getCode());
+        push(node, keys.toArray(new KeyCode[keys.size()]));
+    }
+
+    void write(Node node, String text) {
+        runFx(() -> {
+            Node target = keyTarget(node);
+            for (int i = 0; i < text.length(); i++) {
+                String character = String.valueOf(text.charAt(i));
+                Event.fireEvent(target, new KeyEvent(KeyEvent.KEY_TYPED, character, "", KeyCode.UNDEFINED,
+                    isDown(KeyCode.SHIFT), isDown(KeyCode.CONTROL), isDown(KeyCode.ALT), isDown(KeyCode.META)));
+            }
+        });
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // PRIVATE METHODS.
+    //---------------------------------------------------------------------------------------------
+
+    private void typeKey(Node target, KeyCode key) {
+        fireKey(target, KeyEvent.KEY_PRESSED, key);
+        String character = characterOf(key);
+        if (character != null) {
+            Event.fireEvent(target, new KeyEvent(KeyEvent.KEY_TYPED, character, "", KeyCode.UNDEFINED,
+                isDown(KeyCode.SHIFT), isDown(KeyCode.CONTROL), isDown(KeyCode.ALT), isDown(KeyCode.META)));
+        }
+        fireKey(target, KeyEvent.KEY_RELEASED, key);
+    }
+
+    private void fireKey(Node target, EventType<KeyEvent> type, KeyCode key) {
+        String text = key.isLetterKey() || key.isDigitKey() ? characterOf(key) : "";
+        Event.fireEvent(target, new KeyEvent(type, KeyEvent.CHAR_UNDEFINED, text == null ? "" : text, key,
+            isDown(KeyCode.SHIFT), isDown(KeyCode.CONTROL), isDown(KeyCode.ALT), isDown(KeyCode.META)));
+    }
+
+    private void fireMouse(Node target, EventType<MouseEvent> type, Point2D scenePoint, MouseButton button, int clickCount) {
+        Point2D screen = sceneToScreen(target.getScene(), scenePoint);
+        Event.fireEvent(target, new MouseEvent(type, scenePoint.getX(), scenePoint.getY(), screen.getX(), screen.getY(),
+            button, clickCount,
+            isDown(KeyCode.SHIFT), isDown(KeyCode.CONTROL), isDown(KeyCode.ALT), isDown(KeyCode.META),
+            pressedButtons.contains(MouseButton.PRIMARY), pressedButtons.contains(MouseButton.MIDDLE),
+            pressedButtons.contains(MouseButton.SECONDARY),
+            false, type == MouseEvent.MOUSE_PRESSED && button == MouseButton.SECONDARY, true,
+            new PickResult(target, scenePoint.getX(), scenePoint.getY())));
+    }
+
+    private Node keyTarget(Node node) {
+        Node reference = node != null ? node : pointerTarget;
+        if (reference == null) {
+            throw new FxRobotException("No target node for synthetic key events");
+        }
+        Scene scene = reference.getScene();
+        Node focusOwner = scene != null ? scene.getFocusOwner() : null;
+        return focusOwner != null ? focusOwner : reference;
+    }
+
+    private Node requirePointerTarget() {
+        if (pointerTarget == null || pointerLocation == null) {
+            throw new FxRobotException("No target node for synthetic mouse events");
+        }
+        return pointerTarget;
+    }
+
+    private boolean isDown(KeyCode key) {
+        return pressedKeys.contains(key);
+    }
+
+    private String characterOf(KeyCode key) {
+        if (key == KeyCode.SPACE) {
+            return " ";
+        }
+        if (key.isLetterKey()) {
+            return isDown(KeyCode.SHIFT) ? key.getName() : key.getName().toLowerCase();
+        }
+        if (key.isDigitKey() && key.getName().length() == 1) {
+            return key.getName();
+        }
+        return null;
+    }
+
+    private static List<MouseButton> buttonsOrPrimary(MouseButton... buttons) {
+        return buttons.length > 0 ? Arrays.asList(buttons) : Collections.singletonList(MouseButton.PRIMARY);
+    }
+
+    private static Point2D sceneCenterOf(Node node) {
+        Bounds bounds = node.localToScene(node.getBoundsInLocal());
+        return new Point2D(bounds.getMinX() + bounds.getWidth() / 2, bounds.getMinY() + bounds.getHeight() / 2);
+    }
+
+    private static Point2D sceneToScreen(Scene scene, Point2D scenePoint) {
+        Window window = scene != null ? scene.getWindow() : null;
+        if (window == null) {
+            return scenePoint;
+        }
+        return new Point2D(scenePoint.getX() + scene.getX() + window.getX(), scenePoint.getY() + scene.getY() + window.getY());
+    }
+
+    private static Point2D screenToScene(Scene scene, Point2D screenPoint) {
+        Window window = scene.getWindow();
+        if (window == null) {
+            return screenPoint;
+        }
+        return new Point2D(screenPoint.getX() - scene.getX() - window.getX(), screenPoint.getY() - scene.getY() - window.getY());
+    }
+
+    private static boolean isMac() {
+        return System.getProperty("os.name", "").toLowerCase().startsWith("mac");
+    }
+}
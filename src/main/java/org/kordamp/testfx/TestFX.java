@@ -16,15 +16,22 @@
 package org.kordamp.testfx;
 
 import com.google.common.base.Predicate;
+import javafx.beans.Observable;
+import javafx.beans.value.ObservableBooleanValue;
 import javafx.geometry.HorizontalDirection;
+import javafx.geometry.VerticalDirection;
 import javafx.scene.Node;
+import javafx.scene.control.TextInputControl;
+import javafx.scene.input.KeyCode;
 import org.hamcrest.Matcher;
 import org.testfx.api.FxRobot;
+import org.testfx.robot.KeyboardRobot;
 
+import java.time.Duration;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
-import static org.testfx.util.WaitForAsyncUtils.waitFor;
+import static java.util.Objects.requireNonNull;
 
 public class TestFX extends FxRobot {
     //---------------------------------------------------------------------------------------------
@@ -34,50 +41,168 @@ public class TestFX extends FxRobot {
     public <T extends Node> void waitUntil(final T node,
                                            final Predicate<T> condition,
                                            int timeoutInSeconds) {
-        awaitCondition(() -> condition.apply(node), timeoutInSeconds);
+        awaitCondition(() -> condition.apply(node), Duration.ofSeconds(timeoutInSeconds));
+    }
+
+    public <T extends Node> void waitUntil(final T node,
+                                           final Predicate<T> condition,
+                                           Duration timeout) {
+        awaitCondition(() -> condition.apply(node), timeout);
     }
 
     public <T extends Node> void waitUntil(final String message,
                                            final T node,
                                            final Predicate<T> condition,
                                            int timeoutInSeconds) {
-        awaitCondition(message, () -> condition.apply(node), timeoutInSeconds);
+        awaitCondition(message, () -> condition.apply(node), Duration.ofSeconds(timeoutInSeconds));
+    }
+
+    public <T extends Node> void waitUntil(final String message,
+                                           final T node,
+                                           final Predicate<T> condition,
+                                           Duration timeout) {
+        awaitCondition(message, () -> condition.apply(node), timeout);
     }
 
     public void waitUntil(final Node node,
                           final Matcher<Object> condition,
                           int timeoutInSeconds) {
-        awaitCondition(() -> condition.matches(node), timeoutInSeconds);
+        awaitCondition(() -> condition.matches(node), Duration.ofSeconds(timeoutInSeconds));
+    }
+
+    public void waitUntil(final Node node,
+                          final Matcher<Object> condition,
+                          Duration timeout) {
+        awaitCondition(() -> condition.matches(node), timeout);
     }
 
     public void waitUntil(final String message, final Node node,
                           final Matcher<Object> condition,
                           int timeoutInSeconds) {
-        awaitCondition(message, () -> condition.matches(node), timeoutInSeconds);
+        awaitCondition(message, () -> condition.matches(node), Duration.ofSeconds(timeoutInSeconds));
+    }
+
+    public void waitUntil(final String message, final Node node,
+                          final Matcher<Object> condition,
+                          Duration timeout) {
+        awaitCondition(message, () -> condition.matches(node), timeout);
     }
 
     public <T> void waitUntil(final T value,
                               final Matcher<? super T> condition,
                               int timeoutInSeconds) {
-        awaitCondition(() -> condition.matches(value), timeoutInSeconds);
+        awaitCondition(() -> condition.matches(value), Duration.ofSeconds(timeoutInSeconds));
+    }
+
+    public <T> void waitUntil(final T value,
+                              final Matcher<? super T> condition,
+                              Duration timeout) {
+        awaitCondition(() -> condition.matches(value), timeout);
     }
 
     public <T> void waitUntil(final String message, final T value,
                               final Matcher<? super T> condition,
                               int timeoutInSeconds) {
-        awaitCondition(message, () -> condition.matches(value), timeoutInSeconds);
+        awaitCondition(message, () -> condition.matches(value), Duration.ofSeconds(timeoutInSeconds));
+    }
+
+    public <T> void waitUntil(final String message, final T value,
+                              final Matcher<? super T> condition,
+                              Duration timeout) {
+        awaitCondition(message, () -> condition.matches(value), timeout);
     }
 
     public <T> void waitUntil(final Callable<T> callable,
                               final Matcher<? super T> condition,
                               int timeoutInSeconds) {
-        awaitCondition(() -> condition.matches(callable.call()), timeoutInSeconds);
+        awaitCondition(() -> condition.matches(callable.call()), Duration.ofSeconds(timeoutInSeconds));
+    }
+
+    public <T> void waitUntil(final Callable<T> callable,
+                              final Matcher<? super T> condition,
+                              Duration timeout) {
+        awaitCondition(() -> condition.matches(callable.call()), timeout);
     }
 
     public <T> void waitUntil(final String message, final Callable<T> callable,
                               final Matcher<? super T> condition,
                               int timeoutInSeconds) {
-        awaitCondition(message, () -> condition.matches(callable.call()), timeoutInSeconds);
+        awaitCondition(message, () -> condition.matches(callable.call()), Duration.ofSeconds(timeoutInSeconds));
+    }
+
+    public <T> void waitUntil(final String message, final Callable<T> callable,
+                              final Matcher<? super T> condition,
+                              Duration timeout) {
+        awaitCondition(message, () -> condition.matches(callable.call()), timeout);
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // REACTIVE WAITING.
+    //---------------------------------------------------------------------------------------------
+
+    public void waitUntil(final ObservableBooleanValue condition,
+                          int timeoutInSeconds) {
+        waitUntil(null, condition, Duration.ofSeconds(timeoutInSeconds));
+    }
+
+    public void waitUntil(final ObservableBooleanValue condition,
+                          Duration timeout) {
+        waitUntil(null, condition, timeout);
+    }
+
+    public void waitUntil(final String message,
+                          final ObservableBooleanValue condition,
+                          int timeoutInSeconds) {
+        waitUntil(message, condition, Duration.ofSeconds(timeoutInSeconds));
+    }
+
+    public void waitUntil(final String message,
+                          final ObservableBooleanValue condition,
+                          Duration timeout) {
+        requireNonNull(condition, "Argument 'condition' must not be null");
+        awaitCondition(message, condition::get, timeout, condition);
+    }
+
+    public <T extends Node> void waitUntil(final T node,
+                                           final Predicate<T> condition,
+                                           int timeoutInSeconds,
+                                           Observable... dependencies) {
+        awaitCondition(null, () -> condition.apply(node), Duration.ofSeconds(timeoutInSeconds), dependencies);
+    }
+
+    public <T extends Node> void waitUntil(final T node,
+                                           final Predicate<T> condition,
+                                           Duration timeout,
+                                           Observable... dependencies) {
+        awaitCondition(null, () -> condition.apply(node), timeout, dependencies);
+    }
+
+    public <T> void waitUntil(final T value,
+                              final Matcher<? super T> condition,
+                              int timeoutInSeconds,
+                              Observable... dependencies) {
+        awaitCondition(null, () -> condition.matches(value), Duration.ofSeconds(timeoutInSeconds), dependencies);
+    }
+
+    public <T> void waitUntil(final T value,
+                              final Matcher<? super T> condition,
+                              Duration timeout,
+                              Observable... dependencies) {
+        awaitCondition(null, () -> condition.matches(value), timeout, dependencies);
+    }
+
+    public <T> void waitUntil(final Callable<T> callable,
+                              final Matcher<? super T> condition,
+                              int timeoutInSeconds,
+                              Observable... dependencies) {
+        awaitCondition(null, () -> condition.matches(callable.call()), Duration.ofSeconds(timeoutInSeconds), dependencies);
+    }
+
+    public <T> void waitUntil(final Callable<T> callable,
+                              final Matcher<? super T> condition,
+                              Duration timeout,
+                              Observable... dependencies) {
+        awaitCondition(null, () -> condition.matches(callable.call()), timeout, dependencies);
     }
 
     //---------------------------------------------------------------------------------------------
@@ -93,34 +218,73 @@ public class TestFX extends FxRobot {
         }
     }
 
+    @Override
+    public FxRobot scroll(int amount,
+                          VerticalDirection direction) {
+        scrollBy(direction == VerticalDirection.DOWN ? amount : -amount);
+        return this;
+    }
+
     //---------------------------------------------------------------------------------------------
-    // PRIVATE METHODS.
+    // BULK INPUT.
     //---------------------------------------------------------------------------------------------
 
-    private static final int SCROLL_ONE_UP_OR_LEFT = -1;
-    private static final int SCROLL_ONE_DOWN_OR_RIGHT = 1;
+    /**
+     * Scrolls the vertical mouse wheel by {@code ticks} in a single injection; positive values
+     * scroll down.
+     */
+    public void scrollBy(int ticks) {
+        if (ticks != 0) {
+            robotContext().getMouseRobot().scroll(ticks);
+        }
+    }
 
-    private void scrollRight(int positiveAmount) {
-        for (int scrollTick = 0; scrollTick < positiveAmount; scrollTick++) {
-            robotContext().getMouseRobot().scroll(SCROLL_ONE_DOWN_OR_RIGHT);
+    /**
+     * Types {@code keyCode} {@code times} times without waiting for the FX thread in between, then
+     * waits for it once.
+     */
+    public void typeInBulk(KeyCode keyCode,
+                           int times) {
+        requireNonNull(keyCode, "Argument 'keyCode' must not be null");
+        KeyboardRobot keyboardRobot = robotContext().getKeyboardRobot();
+        for (int i = 0; i < times; i++) {
+            keyboardRobot.pressNoWait(keyCode);
+            keyboardRobot.releaseNoWait(keyCode);
         }
+        FxThreadUtils.awaitFxEvents();
+    }
+
+    public void eraseTextInBulk(int amount) {
+        typeInBulk(KeyCode.BACK_SPACE, amount);
+    }
+
+    /**
+     * Empties {@code control} directly instead of sending one key per character.
+     */
+    public void clearText(TextInputControl control) {
+        requireNonNull(control, "Argument 'control' must not be null");
+        FxThreadUtils.runFx(control::clear);
+        FxThreadUtils.awaitFxEvents();
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // PRIVATE METHODS.
+    //---------------------------------------------------------------------------------------------
+
+    private void scrollRight(int positiveAmount) {
+        scrollBy(positiveAmount);
     }
 
     private void scrollLeft(int positiveAmount) {
-        for (int scrollTick = 0; scrollTick < positiveAmount; scrollTick++) {
-            robotContext().getMouseRobot().scroll(SCROLL_ONE_UP_OR_LEFT);
-        }
+        scrollBy(-positiveAmount);
     }
 
-    private void awaitCondition(Callable<Boolean> condition, int timeoutInSeconds) {
-        awaitCondition(null, condition, timeoutInSeconds);
+    private void awaitCondition(Callable<Boolean> condition, Duration timeout) {
+        awaitCondition(null, condition, timeout);
     }
 
-    private void awaitCondition(String message, Callable<Boolean> condition, int timeoutInSeconds) {
-        try {
-            waitFor(timeoutInSeconds, TimeUnit.SECONDS, condition);
-        } catch (Exception exception) {
-            throw new RuntimeException(message, exception);
-        }
+    private void awaitCondition(String message, Callable<Boolean> condition, Duration timeout, Observable... dependencies) {
+        requireNonNull(timeout, "Argument 'timeout' must not be null");
+        WaitSupport.await(message, condition, timeout.toNanos(), TimeUnit.NANOSECONDS, dependencies);
     }
 }
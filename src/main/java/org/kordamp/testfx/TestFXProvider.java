@@ -0,0 +1,59 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import javafx.geometry.Pos;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.MouseButton;
+
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Manages the lifecycle of the {@code TestFX} robots used by {@code QueryChain}.
+ *
+ * @author Andres Almiray
+ */
+public interface TestFXProvider {
+    /**
+     * Returns a robot ready to be used by the calling thread.
+     */
+    TestFX acquire();
+
+    /**
+     * Releases pressed keys and mouse buttons and restores the default target position.
+     */
+    default void reset(TestFX testfx) {
+        requireNonNull(testfx, "Argument 'testfx' must not be null");
+        testfx.release(new KeyCode[0]);
+        testfx.release(new MouseButton[0]);
+        testfx.targetPos(Pos.CENTER);
+    }
+
+    /**
+     * Hands a robot back to this provider once the caller is done with it.
+     */
+    void release(TestFX testfx);
+
+    static TestFXProvider perThread(Supplier<TestFX> factory) {
+        return new ThreadLocalTestFXProvider(factory);
+    }
+
+    static TestFXProvider perToolkit(Supplier<TestFX> factory) {
+        return new SharedTestFXProvider(factory);
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+/**
+ * Escapes tabs and line breaks so that arbitrary text fits in a single tab separated field.
+ * Shared by the shard protocol and the persisted wait statistics.
+ *
+ * @author Andres Almiray
+ */
+final class TextEscapes {
+    private TextEscapes() {
+        // prevent instantiation
+    }
+
+    static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\r", "\\r").replace("\n", "\\n");
+    }
+
+    static String unescape(String value) {
+        StringBuilder result = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                result.append(next == 't' ? '\t' : next == 'r' ? '\r' : next == 'n' ? '\n' : next);
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+}
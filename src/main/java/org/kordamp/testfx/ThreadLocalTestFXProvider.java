@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Keeps one robot per thread, created on first use.
+ *
+ * @author Andres Almiray
+ */
+final class ThreadLocalTestFXProvider implements TestFXProvider {
+    private final ThreadLocal<TestFX> testfx = new ThreadLocal<>();
+    private final Supplier<TestFX> factory;
+
+    ThreadLocalTestFXProvider(Supplier<TestFX> factory) {
+        this.factory = requireNonNull(factory, "Argument 'factory' must not be null");
+    }
+
+    @Override
+    public TestFX acquire() {
+        TestFX instance = testfx.get();
+        if (instance == null) {
+            instance = requireNonNull(factory.get(), "TestFX factory returned null");
+            testfx.set(instance);
+        }
+        return instance;
+    }
+
+    @Override
+    public void release(TestFX testfx) {
+        reset(testfx);
+        if (this.testfx.get() == testfx) {
+            this.testfx.remove();
+        }
+    }
+}
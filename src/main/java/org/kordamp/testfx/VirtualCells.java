@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import com.google.common.base.Predicate;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.control.IndexedCell;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TableRow;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TreeCell;
+import javafx.scene.control.TreeItem;
+import javafx.scene.control.TreeTableRow;
+import javafx.scene.control.TreeTableView;
+import javafx.scene.control.TreeView;
+
+import java.util.Collections;
+
+/**
+ * Brings rows of virtualized controls into view. Only the cells in the viewport of a
+ * {@code ListView}, {@code TableView}, {@code TreeView} or {@code TreeTableView} exist, so the
+ * control is asked to scroll its {@code VirtualFlow} straight to the row and laid out right away,
+ * after which the cell showing the row can be picked from the handful of live cells.
+ * <p>
+ * Every method must be called on the FX thread.
+ *
+ * @author Andres Almiray
+ */
+final class VirtualCells {
+    private VirtualCells() {
+        // prevent instantiation
+    }
+
+    static boolean supports(Node node) {
+        return node instanceof ListView || node instanceof TableView ||
+            node instanceof TreeView || node instanceof TreeTableView;
+    }
+
+    /**
+     * Returns the number of rows of {@code control}; for trees, the number of expanded rows.
+     */
+    static int rowCount(Node control) {
+        if (control instanceof ListView) {
+            return ((ListView<?>) control).getItems().size();
+        }
+        if (control instanceof TableView) {
+            return ((TableView<?>) control).getItems().size();
+        }
+        if (control instanceof TreeView) {
+            return ((TreeView<?>) control).getExpandedItemCount();
+        }
+        return ((TreeTableView<?>) control).getExpandedItemCount();
+    }
+
+    /**
+     * Returns the item shown at {@code index}; for trees, the value of the tree item.
+     */
+    static Object itemAt(Node control, int index) {
+        if (control instanceof ListView) {
+            return ((ListView<?>) control).getItems().get(index);
+        }
+        if (control instanceof TableView) {
+            return ((TableView<?>) control).getItems().get(index);
+        }
+        TreeItem<?> item = control instanceof TreeView ?
+            ((TreeView<?>) control).getTreeItem(index) : ((TreeTableView<?>) control).getTreeItem(index);
+        return item != null ? item.getValue() : null;
+    }
+
+    /**
+     * Returns the index of the first row whose item is accepted by {@code predicate}, or -1.
+     */
+    static int indexOf(Node control, Predicate<Object> predicate) {
+        int count = rowCount(control);
+        for (int i = 0; i < count; i++) {
+            if (predicate.apply(itemAt(control, i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Scrolls {@code control} to {@code index}, lays it out and returns the cell showing that row,
+     * or {@code null} if the control has not created its cells yet.
+     */
+    static IndexedCell<?> materialize(Node control, int index) {
+        if (control instanceof ListView) {
+            ((ListView<?>) control).scrollTo(index);
+        } else if (control instanceof TableView) {
+            ((TableView<?>) control).scrollTo(index);
+        } else if (control instanceof TreeView) {
+            ((TreeView<?>) control).scrollTo(index);
+        } else {
+            ((TreeTableView<?>) control).scrollTo(index);
+        }
+        control.applyCss();
+        ((Parent) control).layout();
+        return cell(control, index);
+    }
+
+    /**
+     * Returns the live cell showing row {@code index} of {@code control}, or {@code null}.
+     */
+    static IndexedCell<?> cell(Node control, int index) {
+        Class<?> rowType = rowType(control);
+        return (IndexedCell<?>) VisibleNodes.first(Collections.singleton(control),
+            node -> rowType.isInstance(node) && ((IndexedCell<?>) node).getIndex() == index);
+    }
+
+    private static Class<?> rowType(Node control) {
+        if (control instanceof ListView) {
+            return ListCell.class;
+        }
+        if (control instanceof TableView) {
+            return TableRow.class;
+        }
+        if (control instanceof TreeView) {
+            return TreeCell.class;
+        }
+        return TreeTableRow.class;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import com.google.common.base.Predicate;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+
+import static org.testfx.util.NodeQueryUtils.isVisible;
+
+/**
+ * Finds the first visible node among a set of candidates or below a set of roots without
+ * materializing every match. Subtrees whose root is not visible are skipped as a whole.
+ * <p>
+ * Nodes are visited in the same pre-order as TestFX lookups, so the node found is the one a
+ * {@code lookup(..).match(isVisible())} query would have returned first.
+ *
+ * @author Andres Almiray
+ */
+final class VisibleNodes {
+    private static final Predicate<Node> VISIBLE = isVisible();
+
+    private VisibleNodes() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns the first visible node of {@code candidates}, or {@code null} if there is none.
+     */
+    static Node first(Iterable<? extends Node> candidates) {
+        for (Node candidate : candidates) {
+            if (candidate.isVisible() && VISIBLE.apply(candidate)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the first visible node at or below {@code roots} accepted by {@code filter}, or
+     * {@code null} if there is none.
+     */
+    static Node first(Collection<? extends Node> roots, Predicate<Node> filter) {
+        Deque<Node> pending = new ArrayDeque<>();
+        for (Node root : roots) {
+            pending.push(root);
+            while (!pending.isEmpty()) {
+                Node node = pending.pop();
+                if (!node.isVisible()) {
+                    continue;
+                }
+                if (filter.apply(node) && VISIBLE.apply(node)) {
+                    return node;
+                }
+                if (node instanceof Parent) {
+                    List<Node> children = ((Parent) node).getChildrenUnmodifiable();
+                    for (int i = children.size() - 1; i >= 0; i--) {
+                        pending.push(children.get(i));
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a filter equivalent to {@code selector} when it is a plain {@code #id} or
+     * {@code .class} selector, or {@code null} for any other selector.
+     */
+    static Predicate<Node> selectorFilter(String selector) {
+        if (!SelectorIndex.supports(selector)) {
+            return null;
+        }
+        String name = selector.substring(1);
+        if (selector.charAt(0) == '#') {
+            return node -> name.equals(node.getId());
+        }
+        return node -> node.getStyleClass().contains(name);
+    }
+}
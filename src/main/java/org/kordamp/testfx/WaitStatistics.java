@@ -0,0 +1,212 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Completion times of {@code waitUntil} steps, kept per chain and condition across runs in a small
+ * text file.
+ * <p>
+ * Install an instance with {@code QueryChain.setWaitStatistics} to record how long each wait
+ * takes to succeed. In adaptive mode, a wait whose condition has been seen often enough gives up
+ * once it has run {@code factor} times past its usual 99th percentile, never sooner than
+ * {@code floor} and never later than the timeout it was given, so a broken condition fails in
+ * moments instead of burning its whole padded timeout. Timed out waits are not recorded, so they
+ * do not drag the percentile up.
+ * <p>
+ * Waits are keyed by the chain description and the condition message, or the matcher's
+ * description; predicates without a message share one key per chain. Durations are bucketed like
+ * {@code HistogramChainListener}, so percentiles are accurate to within 12.5%.
+ *
+ * @author Andres Almiray
+ */
+public final class WaitStatistics implements Closeable {
+    public static final double DEFAULT_FACTOR = 3d;
+    public static final int DEFAULT_MIN_SAMPLES = 20;
+    public static final Duration DEFAULT_FLOOR = Duration.ofMillis(250);
+
+    private final Path file;
+    private final ConcurrentMap<String, AtomicLongArray> histograms = new ConcurrentHashMap<>();
+    private volatile boolean adaptive;
+    private volatile double factor = DEFAULT_FACTOR;
+    private volatile int minSamples = DEFAULT_MIN_SAMPLES;
+    private volatile Duration floor = DEFAULT_FLOOR;
+
+    private WaitStatistics(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the statistics stored in {@code file}, if it exists. {@code close()} writes them back.
+     */
+    public static WaitStatistics open(Path file) throws IOException {
+        WaitStatistics statistics = new WaitStatistics(requireNonNull(file, "Argument 'file' must not be null"));
+        if (Files.exists(file)) {
+            statistics.load();
+        }
+        return statistics;
+    }
+
+    /**
+     * Turns on adaptive timeouts with the default factor, sample count and floor.
+     */
+    public WaitStatistics adaptive() {
+        return adaptive(DEFAULT_FACTOR, DEFAULT_MIN_SAMPLES, DEFAULT_FLOOR);
+    }
+
+    /**
+     * Turns on adaptive timeouts: once a wait has succeeded {@code minSamples} times, it fails
+     * after {@code factor} times its 99th percentile, but never before {@code floor}.
+     */
+    public WaitStatistics adaptive(double factor, int minSamples, Duration floor) {
+        if (factor < 1d) {
+            throw new IllegalArgumentException("Argument 'factor' must be at least 1");
+        }
+        this.factor = factor;
+        this.minSamples = minSamples;
+        this.floor = requireNonNull(floor, "Argument 'floor' must not be null");
+        this.adaptive = true;
+        return this;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * Returns the number of successful waits recorded for {@code key}.
+     */
+    public long getCount(String key) {
+        AtomicLongArray histogram = histograms.get(key);
+        if (histogram == null) {
+            return 0;
+        }
+        long count = 0;
+        for (int i = 0; i < histogram.length(); i++) {
+            count += histogram.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the upper bound of the bucket holding the given percentile (0-100) of the completion
+     * times recorded for {@code key}, or {@code Duration.ZERO} if there are none.
+     */
+    public Duration percentile(String key, double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Argument 'percentile' must be between 0 and 100");
+        }
+        long total = getCount(key);
+        if (total == 0) {
+            return Duration.ZERO;
+        }
+        AtomicLongArray histogram = histograms.get(key);
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100d));
+        long seen = 0;
+        for (int i = 0; i < histogram.length(); i++) {
+            seen += histogram.get(i);
+            if (seen >= rank) {
+                return Duration.ofNanos(HistogramChainListener.Stats.upperBoundOf(i));
+            }
+        }
+        return Duration.ZERO;
+    }
+
+    /**
+     * Returns the keys of every recorded wait, sorted.
+     */
+    public Iterable<String> keys() {
+        return new TreeMap<>(histograms).keySet();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, AtomicLongArray> entry : new TreeMap<>(histograms).entrySet()) {
+                writer.write(TextEscapes.escape(entry.getKey()));
+                AtomicLongArray histogram = entry.getValue();
+                for (int i = 0; i < histogram.length(); i++) {
+                    long count = histogram.get(i);
+                    if (count > 0) {
+                        writer.write('\t');
+                        writer.write(i + ":" + count);
+                    }
+                }
+                writer.newLine();
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Returns how long the wait for {@code key} may run, given it was asked to time out after
+     * {@code timeout}.
+     */
+    Duration timeoutFor(String key, Duration timeout) {
+        if (!adaptive || getCount(key) < minSamples) {
+            return timeout;
+        }
+        long p99 = percentile(key, 99).toNanos();
+        Duration adapted = Duration.ofNanos((long) Math.min(Long.MAX_VALUE, p99 * factor));
+        if (adapted.compareTo(floor) < 0) {
+            adapted = floor;
+        }
+        return adapted.compareTo(timeout) < 0 ? adapted : timeout;
+    }
+
+    void record(String key, long nanos) {
+        histograms.computeIfAbsent(key, k -> new AtomicLongArray(HistogramChainListener.Stats.BUCKETS))
+            .incrementAndGet(HistogramChainListener.Stats.bucketOf(Math.max(0, nanos)));
+    }
+
+    private void load() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                AtomicLongArray histogram = new AtomicLongArray(HistogramChainListener.Stats.BUCKETS);
+                for (int i = 1; i < fields.length; i++) {
+                    int colon = fields[i].indexOf(':');
+                    histogram.set(Integer.parseInt(fields[i].substring(0, colon)), Long.parseLong(fields[i].substring(colon + 1)));
+                }
+                histograms.put(TextEscapes.unescape(fields[0]), histogram);
+            }
+        }
+    }
+}
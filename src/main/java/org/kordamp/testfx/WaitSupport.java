@@ -0,0 +1,235 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
+import javafx.beans.value.ObservableValue;
+import javafx.scene.Scene;
+
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Waits for conditions either reactively, by listening to the observables they depend on, or by
+ * polling with an exponential back-off when no dependencies are known.
+ *
+ * @author Andres Almiray
+ */
+final class WaitSupport {
+    private static final long INITIAL_POLL_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long MAX_POLL_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(64);
+
+    private static volatile ScheduledExecutorService scheduler;
+
+    private WaitSupport() {
+        // prevent instantiation
+    }
+
+    static void await(String message, Callable<Boolean> condition, long timeout, TimeUnit unit, Observable... dependencies) {
+        long mark = ChainTracer.mark();
+        try {
+            if (dependencies.length > 0) {
+                awaitReactively(condition, timeout, unit, dependencies);
+            } else {
+                awaitPolling(condition, timeout, unit);
+            }
+        } catch (Exception exception) {
+            throw new RuntimeException(message, exception);
+        } finally {
+            ChainTracer.fxWaited(mark);
+        }
+    }
+
+    /**
+     * Waits until the FX thread is idle: queued events have been processed, a full pulse has
+     * finished after them and none of {@code scenes} has a layout pass pending.
+     */
+    static void awaitIdle(Collection<Scene> scenes, long timeout, TimeUnit unit) {
+        if (Platform.isFxApplicationThread()) {
+            throw new IllegalStateException("Can not wait for the FX thread to become idle from the FX thread");
+        }
+        long mark = ChainTracer.mark();
+        try {
+            FxPulses.awaitPulses(1, scenes, timeout, unit);
+        } catch (RuntimeException e) {
+            throw new RuntimeException("The FX application did not become idle", e);
+        } finally {
+            ChainTracer.fxWaited(mark);
+        }
+    }
+
+    /**
+     * Completes once {@code condition} holds. The condition is evaluated on the FX thread right away
+     * and then again every time one of {@code dependencies} is invalidated. Listeners are removed as
+     * soon as the returned future completes, including when it is cancelled.
+     */
+    static CompletableFuture<Void> whenCondition(Callable<Boolean> condition, Observable... dependencies) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        InvalidationListener listener = observable -> evaluate(condition, future, dependencies);
+        onFx(() -> {
+            for (Observable dependency : dependencies) {
+                dependency.addListener(listener);
+            }
+            evaluate(condition, future, dependencies);
+        });
+        future.whenComplete((value, throwable) -> onFx(() -> {
+            for (Observable dependency : dependencies) {
+                dependency.removeListener(listener);
+            }
+        }));
+        return future;
+    }
+
+    /**
+     * Completes once {@code condition} holds, without blocking any thread. The condition is evaluated
+     * on the FX thread, reactively when {@code dependencies} are given and otherwise by polling with
+     * the same back-off as {@code await}. Fails with a {@code RuntimeException} carrying
+     * {@code message} once {@code timeout} elapses.
+     */
+    static CompletableFuture<Void> whenCondition(String message, Callable<Boolean> condition, long timeout, TimeUnit unit, Observable... dependencies) {
+        CompletableFuture<Void> source = dependencies.length > 0 ? whenCondition(condition, dependencies) : whenPolled(condition);
+        ScheduledFuture<?> timer = scheduler().schedule(
+            () -> source.completeExceptionally(new TimeoutException("Timeout " + timeout + " " + unit + " reached.")), timeout, unit);
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        source.whenComplete((value, throwable) -> {
+            timer.cancel(false);
+            if (throwable == null) {
+                result.complete(null);
+            } else {
+                result.completeExceptionally(new RuntimeException(message, throwable));
+            }
+        });
+        result.whenComplete((value, throwable) -> source.cancel(false));
+        return result;
+    }
+
+    /**
+     * Returns the timer shared by non-blocking waits. Its single daemon thread only schedules work
+     * and never runs conditions itself.
+     */
+    static ScheduledExecutorService scheduler() {
+        ScheduledExecutorService result = scheduler;
+        if (result == null) {
+            synchronized (WaitSupport.class) {
+                result = scheduler;
+                if (result == null) {
+                    result = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "testfx-wait-scheduler");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    scheduler = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static CompletableFuture<Void> whenPolled(Callable<Boolean> condition) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        poll(condition, future, INITIAL_POLL_INTERVAL_NANOS);
+        return future;
+    }
+
+    private static void poll(Callable<Boolean> condition, CompletableFuture<Void> future, long interval) {
+        Platform.runLater(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                if (Boolean.TRUE.equals(condition.call())) {
+                    future.complete(null);
+                    return;
+                }
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+                return;
+            }
+            scheduler().schedule(() -> poll(condition, future, Math.min(interval * 2, MAX_POLL_INTERVAL_NANOS)),
+                interval, TimeUnit.NANOSECONDS);
+        });
+    }
+
+    private static void awaitReactively(Callable<Boolean> condition, long timeout, TimeUnit unit, Observable... dependencies) throws Exception {
+        CompletableFuture<Void> future = whenCondition(condition, dependencies);
+        try {
+            future.get(timeout, unit);
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            throw new TimeoutException("Timeout " + timeout + " " + unit + " reached.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    private static void awaitPolling(Callable<Boolean> condition, long timeout, TimeUnit unit) throws Exception {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long interval = INITIAL_POLL_INTERVAL_NANOS;
+        while (!Boolean.TRUE.equals(condition.call())) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException("Timeout " + timeout + " " + unit + " reached.");
+            }
+            TimeUnit.NANOSECONDS.sleep(Math.min(interval, remaining));
+            interval = Math.min(interval * 2, MAX_POLL_INTERVAL_NANOS);
+        }
+    }
+
+    private static void evaluate(Callable<Boolean> condition, CompletableFuture<Void> future, Observable... dependencies) {
+        if (future.isDone()) {
+            return;
+        }
+        if (!Platform.isFxApplicationThread()) {
+            Platform.runLater(() -> evaluate(condition, future, dependencies));
+            return;
+        }
+
+        try {
+            if (Boolean.TRUE.equals(condition.call())) {
+                future.complete(null);
+                return;
+            }
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+            return;
+        }
+
+        // invalidation listeners fire once until the value is read again
+        for (Observable dependency : dependencies) {
+            if (dependency instanceof ObservableValue) {
+                ((ObservableValue<?>) dependency).getValue();
+            }
+        }
+    }
+
+    private static void onFx(Runnable runnable) {
+        if (Platform.isFxApplicationThread()) {
+            runnable.run();
+        } else {
+            Platform.runLater(runnable);
+        }
+    }
+}
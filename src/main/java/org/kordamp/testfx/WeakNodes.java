@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016-2017 Andres Almiray
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved by the
+ * European Commission - subsequent versions of the EUPL (the "Licence"); You may
+ * not use this work except in compliance with the Licence.
+ *
+ * You may obtain a copy of the Licence at:
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the Licence for the
+ * specific language governing permissions and limitations under the Licence.
+ */
+package org.kordamp.testfx;
+
+import javafx.scene.Node;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Resolved nodes held through weak references, used by chains in {@code SoakMode} so a chain
+ * never keeps a removed part of the scene graph alive.
+ *
+ * @author Andres Almiray
+ */
+final class WeakNodes {
+    private final List<WeakReference<Node>> nodes;
+
+    WeakNodes(Collection<? extends Node> nodes) {
+        this.nodes = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            this.nodes.add(new WeakReference<>(node));
+        }
+    }
+
+    /**
+     * Returns the nodes, or {@code null} when none were resolved or any of them has been
+     * collected, in which case the query has to be resolved again.
+     */
+    Set<Node> get() {
+        if (nodes.isEmpty()) {
+            return null;
+        }
+        Set<Node> live = new LinkedHashSet<>();
+        for (WeakReference<Node> reference : nodes) {
+            Node node = reference.get();
+            if (node == null) {
+                return null;
+            }
+            live.add(node);
+        }
+        return live;
+    }
+}